@@ -3,6 +3,7 @@ package com.modsim;
 import com.modsim.gui.GUI;
 import com.modsim.simulator.Sim;
 import com.modsim.operations.OperationStack;
+import com.modsim.util.DesignJournal;
 import com.modsim.util.ModuleClipboard;
 import com.modsim.util.Selection;
 
@@ -38,6 +39,18 @@ public class Main {
 				// Start sim ticking - sim is initialized below *before* this is called
 				sim.newSim();
 				sim.start();
+
+				// Offer to recover work lost when the program last exited
+				DesignJournal journal = DesignJournal.open();
+				if (journal != null && journal.hasChanges()) {
+					int res = JOptionPane.showConfirmDialog(ui.frame,
+							"ModuleSim did not exit cleanly. Would you like to recover your unsaved changes?",
+							"Recover unsaved changes", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+					if (res == JOptionPane.YES_OPTION && journal.recover()) {
+						opStack.markModified();
+					}
+				}
+				opStack.setJournal(journal);
 			}
 		});
 
@@ -4,7 +4,9 @@ import com.modsim.operations.Ops;
 import com.modsim.gui.view.ContextMenu;
 import com.modsim.gui.view.View;
 import com.modsim.res.ResourceLoader;
+import com.modsim.util.DesignSaver;
 import com.modsim.Main;
+import com.modsim.modules.NRAM;
 
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
@@ -177,6 +179,12 @@ public class GUI {
 
             @Override
             public void windowClosed(WindowEvent e) {
+                NRAM.flushBackingFiles(Main.sim.getModules());
+
+                // The user has had the chance to save, so unless that failed there's nothing to recover
+                if (DesignSaver.awaitPending()) {
+                    Main.opStack.closeJournal();
+                }
                 System.exit(0);
             }
         });
@@ -18,9 +18,12 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import com.modsim.Main;
-import com.modsim.util.BinData;
 import com.modsim.util.HexReader;
 import com.modsim.util.HexWriter;
+import com.modsim.util.IntelHexReader;
+import com.modsim.util.IntelHexWriter;
+import com.modsim.util.RawReader;
+import com.modsim.util.RawWriter;
 import com.modsim.modules.NRAM;
 import com.modsim.util.XMLReader;
 
@@ -143,8 +146,7 @@ public class MemEdit {
      * @return The stored byte
      */
     public int getByte(int adr) {
-        BinData[] bits = nram.read(adr);
-        return (bits[1].getUInt() << 4) | (bits[0].getUInt());
+        return nram.getByte(adr);
     }
 
     /**
@@ -254,6 +256,64 @@ public class MemEdit {
         });
         file.add(menuItem);
 
+        file.addSeparator();
+
+        menuItem = new JMenuItem("Import Binary Image");
+        menuItem.setToolTipText("Loads a raw binary file into memory at a given address");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File f = chooseFile("Import binary image", FileDialog.LOAD, "*.bin");
+                Integer offset = (f == null) ? null : askOffset();
+                if (offset != null) {
+                    RawReader.readFile(f, nram, offset);
+                    updAdr = -1;
+                    update();
+                }
+            }
+        });
+        file.add(menuItem);
+
+        menuItem = new JMenuItem("Import Intel HEX");
+        menuItem.setToolTipText("Loads an Intel HEX file into memory, offset by a given address");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File f = chooseFile("Import Intel HEX", FileDialog.LOAD, "*.ihex");
+                Integer offset = (f == null) ? null : askOffset();
+                if (offset != null) {
+                    IntelHexReader.readFile(f, nram, offset);
+                    updAdr = -1;
+                    update();
+                }
+            }
+        });
+        file.add(menuItem);
+
+        menuItem = new JMenuItem("Export Binary Image");
+        menuItem.setToolTipText("Saves the whole of memory to a raw binary file");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File f = chooseFile("Export binary image", FileDialog.SAVE, "*.bin");
+                if (f != null) {
+                    RawWriter.writeFile(f, nram);
+                }
+            }
+        });
+        file.add(menuItem);
+
+        menuItem = new JMenuItem("Export Intel HEX");
+        menuItem.setToolTipText("Saves the current NRAM contents to an Intel HEX file");
+        menuItem.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                File f = chooseFile("Export Intel HEX", FileDialog.SAVE, "*.ihex");
+                if (f != null) {
+                    IntelHexWriter.writeFile(f, nram);
+                }
+            }
+        });
+        file.add(menuItem);
+
+        file.addSeparator();
+
         menuItem = new JMenuItem("Close without save");
         menuItem.setMnemonic(KeyEvent.VK_X);
         menuItem.setToolTipText("Closes the window without saving NRAM contents");
@@ -277,6 +337,50 @@ public class MemEdit {
         menu.add(file);
     }
 
+    /**
+     * Asks the user for a file to import from or export to
+     * @param mode FileDialog.LOAD or FileDialog.SAVE
+     * @param pattern Suggested file name pattern
+     * @return The chosen file, or null if cancelled
+     */
+    private File chooseFile(String title, int mode, String pattern) {
+        Preferences prefs = Preferences.userNodeForPackage(MemEdit.class);
+        FileDialog fd = new FileDialog(frame, title, mode);
+        fd.setFile(pattern);
+        fd.setDirectory(prefs.get("hex_fileDir", ""));
+        fd.setVisible(true);
+
+        if (fd.getFile() == null) return null;
+
+        prefs.put("hex_fileDir", fd.getDirectory());
+        return new File(fd.getDirectory() + fd.getFile());
+    }
+
+    /**
+     * Asks the user for the (hex) address to load an image at
+     * @return The address, or null if cancelled
+     */
+    private Integer askOffset() {
+        String str = "0000";
+        while (true) {
+            str = (String) JOptionPane.showInputDialog(frame, "Load at address (hex):", "Load address",
+                    JOptionPane.QUESTION_MESSAGE, null, null, str);
+            if (str == null) return null;
+
+            try {
+                int offset = Integer.parseInt(str.trim(), 16);
+                if (offset >= 0 && offset <= NRAM.MAX_ADDR) {
+                    return offset;
+                }
+            }
+            catch (NumberFormatException nfe) {
+                // Ask again
+            }
+            JOptionPane.showMessageDialog(frame, "The address must be a hex number between 0 and "
+                    + Integer.toHexString(NRAM.MAX_ADDR));
+        }
+    }
+
     class ScrollAdjustmentListener implements AdjustmentListener {
         public void adjustmentValueChanged(AdjustmentEvent e) {
             memView.setOffset(e.getValue());
@@ -1,12 +1,15 @@
 package com.modsim.gui.view;
 
+import java.awt.FileDialog;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.*;
 
+import com.modsim.operations.BackingFileOperation;
 import com.modsim.operations.Ops;
 import com.modsim.gui.MemEdit;
 import com.modsim.modules.BaseModule;
@@ -28,7 +31,7 @@ public class ContextMenu  {
 	private Port port;
 
 	private JMenuItem rmLink, rotCW, rotCCW, rot180, copy, paste, delete,
-			ramEdit, ramClear, regEdit, regClear, labelEdit, labelSize, persistanceOn, persistanceOff;
+			ramEdit, ramClear, ramBack, ramUnback, regEdit, regClear, labelEdit, labelSize, persistanceOn, persistanceOff;
 
 	/**
 	 * Instantiates the menu system, generating the menu items
@@ -99,8 +102,10 @@ public class ContextMenu  {
 						NRAM ram = (NRAM) entity;
 						switch (res) {
 							case JOptionPane.OK_OPTION:
-								ram.clear();
-								Main.sim.propagate(ram);
+								Main.sim.submit(() -> {
+									ram.clear();
+									Main.sim.propagate(ram);
+								});
 							default:
 								break;
 						}
@@ -109,6 +114,41 @@ public class ContextMenu  {
 			}
 		});
 
+		// Back memory with a file
+		ramBack = new JMenuItem("Back NRAM with File...");
+		ramBack.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				NRAM ram = firstNRAM();
+				if (ram == null) return;
+
+				FileDialog fd = new FileDialog(Main.ui.frame, "NRAM backing file", FileDialog.SAVE);
+				fd.setFile("*.nram");
+				fd.setVisible(true);
+				if (fd.getFile() == null) return;
+
+				BackingFileOperation op = new BackingFileOperation(ram, new File(fd.getDirectory() + fd.getFile()));
+				if (op.apply()) {
+					Main.opStack.pushOp(op);
+				}
+			}
+		});
+
+		// Return memory to the design
+		ramUnback = new JMenuItem("Stop Using Backing File");
+		ramUnback.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				NRAM ram = firstNRAM();
+				if (ram != null && ram.getBackingFile() != null) {
+					BackingFileOperation op = new BackingFileOperation(ram, null);
+					if (op.apply()) {
+						Main.opStack.pushOp(op);
+					}
+				}
+			}
+		});
+
 		////////// Register-specfic
 
 		// Edit
@@ -116,10 +156,7 @@ public class ContextMenu  {
 		regEdit.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				BinData newVal = new BinData(0);
-				if (entities.size() == 1) {
-					newVal = ((Register)entities.get(0)).getStoredVal();
-				}
+				BinData newVal = entities.size() == 1 ? ((Register)entities.get(0)).getStoredVal() : new BinData(0);
 
 				String valStr = JOptionPane.showInputDialog(Main.ui.frame, "Enter new Register value:", newVal);
 				if (valStr != null) {
@@ -139,9 +176,10 @@ public class ContextMenu  {
                         if (entity.getType() == PickableEntity.MODULE &&
                                 ((BaseModule)entity).getModType().equals(AvailableModules.REGISTER)) {
                             Register reg = (Register) entity;
-                            reg.setStoredVal(newVal);
-
-                            Main.sim.propagate(reg);
+                            Main.sim.submit(() -> {
+                                reg.setStoredVal(newVal);
+                                Main.sim.propagate(reg);
+                            });
                         }
                     }
 				}
@@ -157,9 +195,10 @@ public class ContextMenu  {
 					if (entity.getType() == PickableEntity.MODULE &&
 							((BaseModule)entity).getModType().equals(AvailableModules.REGISTER)) {
 						Register reg = (Register) entity;
-						reg.clear();
-
-						Main.sim.propagate(reg);
+						Main.sim.submit(() -> {
+							reg.clear();
+							Main.sim.propagate(reg);
+						});
 					}
 				}
 			}
@@ -176,7 +215,7 @@ public class ContextMenu  {
 					if (entity.getType() == PickableEntity.MODULE &&
 							((BaseModule)entity).getModType().equals(AvailableModules.LEDMatrix)) {
 						LEDMatrix ledmatrix = (LEDMatrix) entity;
-						ledmatrix.turnOffPersist();						
+						Main.sim.submit(ledmatrix::turnOffPersist);
 					}
 				}
 			}
@@ -198,6 +237,18 @@ public class ContextMenu  {
 
 	}
 
+	/**
+	 * @return The first NRAM module the menu is operating on, or null if there is none
+	 */
+	private NRAM firstNRAM() {
+		for (PickableEntity e : entities) {
+			if (e.getType() == PickableEntity.MODULE && ((BaseModule)e).getModType().equals(AvailableModules.RAM)) {
+				return (NRAM) e;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Displays a context-sensitive edit menu
 	 * @param modules The 'selection' to operate on
@@ -236,6 +287,12 @@ public class ContextMenu  {
                     menu.addSeparator();
                     menu.add(ramEdit);
                     menu.add(ramClear);
+                    if (((NRAM) e).getBackingFile() == null) {
+                        menu.add(ramBack);
+                    }
+                    else {
+                        menu.add(ramUnback);
+                    }
                     break;
                 }
             }
@@ -0,0 +1,66 @@
+package com.modsim.gui.view;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.modsim.modules.Link;
+import com.modsim.res.Colors;
+
+/**
+ * Collects links to be drawn together, grouped by colour, so that the colour and stroke are set once per group
+ * rather than once per link. Each curve is still drawn separately: Java2D rejects those outside the clip cheaply,
+ * which a single combined shape would lose. Where links overlap, those in the selected colour are drawn on top.
+ */
+public class LinkBatch {
+
+    private static final BasicStroke LINK_STROKE = new BasicStroke(2);
+
+    private final boolean simplified;
+    private final Map<Color, List<Link>> groups = new LinkedHashMap<>();
+
+    /**
+     * @param simplified Whether links are drawn as straight lines between their control points
+     */
+    public LinkBatch(boolean simplified) {
+        this.simplified = simplified;
+    }
+
+    public void add(Link l) {
+        groups.computeIfAbsent(l.getColour(), c -> new ArrayList<>()).add(l);
+    }
+
+    /**
+     * Draws the links added, in world space
+     */
+    public void draw(Graphics2D g) {
+        g.setStroke(LINK_STROKE);
+
+        for (Map.Entry<Color, List<Link>> group : groups.entrySet()) {
+            if (!group.getKey().equals(Colors.selectedLink)) {
+                draw(g, group.getKey(), group.getValue());
+            }
+        }
+
+        List<Link> selected = groups.get(Colors.selectedLink);
+        if (selected != null) {
+            draw(g, Colors.selectedLink, selected);
+        }
+    }
+
+    private void draw(Graphics2D g, Color colour, List<Link> links) {
+        g.setColor(colour);
+        for (Link l : links) {
+            if (simplified) {
+                l.path.drawSimplified(g);
+            }
+            else {
+                l.path.draw(g);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.modsim.gui.view;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+
+/**
+ * Cache of module renderings, so that modules are drawn by copying an image rather than by repeating their vector
+ * drawing. Static bodies are shared by all modules of the same type, and labels by modules with the same label.
+ * Sprites are keyed by zoom as well, so those for recently used zoom levels are kept.
+ */
+public class ModuleSprites {
+
+    // Renderings bigger than this many pixels across are drawn directly - few modules fit on screen at that size
+    private static final int MAX_SPRITE_SIZE = 512;
+
+    // Total size of the cached sprites, beyond which the least recently used are dropped
+    private static final long MAX_CACHED_PIXELS = 4 << 20;
+
+    // Margin around a module's body covering its ports
+    private static final double BODY_MARGIN = 20;
+
+    private static final class Key {
+        final AvailableModules type;
+        final int orientation;
+        final double zoom;
+        final String label;
+        final int labelSize;
+
+        Key(BaseModule m, double zoom, boolean label) {
+            type = m.getModType();
+            orientation = Math.floorMod(m.orientation, 4);
+            this.zoom = zoom;
+            this.label = label ? m.label : null;
+            labelSize = label ? m.labelSize : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return type == k.type && orientation == k.orientation && zoom == k.zoom
+                    && Objects.equals(label, k.label) && labelSize == k.labelSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, orientation, zoom, label, labelSize);
+        }
+    }
+
+    private static final class Sprite {
+        final BufferedImage image;
+        // Pixel position of the module's centre within the image
+        final int originX, originY;
+
+        Sprite(BufferedImage image, int originX, int originY) {
+            this.image = image;
+            this.originX = originX;
+            this.originY = originY;
+        }
+    }
+
+    // Cached sprites, least recently used first
+    private final LinkedHashMap<Key, Sprite> sprites = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedPixels = 0;
+
+    private boolean useAA = true;
+
+    /**
+     * Sets whether sprites are antialiased, dropping the cached sprites if this changes
+     */
+    public void setAntialiasing(boolean aa) {
+        if (aa != useAA) {
+            useAA = aa;
+            sprites.clear();
+            cachedPixels = 0;
+        }
+    }
+
+    /**
+     * Draws a module's static body (see BaseModule.paintStatic)
+     * @param g Graphics context to draw with, in pixel space
+     * @param x Pixel position of the module's centre
+     * @param y Pixel position of the module's centre
+     * @return False if the module is too big on screen to be cached, in which case nothing is drawn
+     */
+    public boolean drawBody(Graphics2D g, BaseModule m, double zoom, double x, double y) {
+        Rectangle2D bounds = new Rectangle2D.Double(-m.w / 2 - BODY_MARGIN, -m.h / 2 - BODY_MARGIN,
+                m.w + 2 * BODY_MARGIN, m.h + 2 * BODY_MARGIN);
+        return draw(g, new Key(m, zoom, false), m, bounds, zoom, x, y);
+    }
+
+    /**
+     * Draws a module's label (see BaseModule.drawLabel)
+     * @param g Graphics context to draw with, in pixel space
+     * @param x Pixel position of the module's centre
+     * @param y Pixel position of the module's centre
+     * @return False if the label is too big on screen to be cached, in which case nothing is drawn
+     */
+    public boolean drawLabel(Graphics2D g, BaseModule m, double zoom, double x, double y) {
+        Rectangle2D bounds = m.getLabelBounds();
+        if (bounds == null) {
+            return true;
+        }
+        return draw(g, new Key(m, zoom, true), m, bounds, zoom, x, y);
+    }
+
+    private boolean draw(Graphics2D g, Key key, BaseModule m, Rectangle2D bounds, double zoom, double x, double y) {
+        Sprite sprite = sprites.get(key);
+
+        if (sprite == null) {
+            AffineTransform toSprite = AffineTransform.getScaleInstance(zoom, zoom);
+            toSprite.quadrantRotate(key.orientation);
+            Rectangle2D area = toSprite.createTransformedShape(bounds).getBounds2D();
+
+            // A pixel's border for antialiasing
+            int originX = 1 - (int) Math.floor(area.getMinX());
+            int originY = 1 - (int) Math.floor(area.getMinY());
+            int width = (int) Math.ceil(area.getMaxX()) + originX + 1;
+            int height = (int) Math.ceil(area.getMaxY()) + originY + 1;
+
+            if (width > MAX_SPRITE_SIZE || height > MAX_SPRITE_SIZE) {
+                return false;
+            }
+
+            sprite = new Sprite(render(g, key, m, toSprite, originX, originY, width, height), originX, originY);
+            sprites.put(key, sprite);
+            cachedPixels += width * height;
+            trim();
+        }
+
+        g.drawImage(sprite.image, (int) Math.round(x) - sprite.originX, (int) Math.round(y) - sprite.originY, null);
+        return true;
+    }
+
+    private BufferedImage render(Graphics2D g, Key key, BaseModule m, AffineTransform toSprite,
+                                 int originX, int originY, int width, int height) {
+        BufferedImage image = g.getDeviceConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        Graphics2D sg = image.createGraphics();
+
+        // Antialiasing
+        if (useAA) {
+            sg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        else {
+            sg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+
+        sg.translate(originX, originY);
+        sg.transform(toSprite);
+        if (key.label == null) {
+            m.paintStatic(sg);
+        }
+        else {
+            m.drawLabel(sg);
+        }
+
+        sg.dispose();
+        return image;
+    }
+
+    /**
+     * Drops the least recently used sprites until the cache is within its size limit
+     */
+    private void trim() {
+        Iterator<Map.Entry<Key, Sprite>> eldest = sprites.entrySet().iterator();
+        while (cachedPixels > MAX_CACHED_PIXELS && eldest.hasNext()) {
+            BufferedImage image = eldest.next().getValue().image;
+            cachedPixels -= (long) image.getWidth() * image.getHeight();
+            eldest.remove();
+        }
+    }
+}
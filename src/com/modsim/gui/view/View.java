@@ -4,21 +4,28 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.prefs.Preferences;
 
 import javax.swing.*;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.Link;
-import com.modsim.modules.parts.VisiblePart;
 import com.modsim.res.Colors;
 import com.modsim.Main;
+import com.modsim.simulator.PickableEntity;
 import com.modsim.tools.BaseTool;
 import com.modsim.tools.PlaceTool;
 import com.modsim.util.Vec2;
 
-import static java.lang.Math.abs;
-
 /**
  * The main viewport for the simulator
  * @author aw12700
@@ -45,14 +52,68 @@ public class View extends JPanel {
 
     private int dynamicRefreshRate = 30;
 
-    private BufferedImage staticCanvas = null;
+    // The static layer is cached as tiles of this many pixels square. Tiles are anchored to the world, so panning
+    // reuses them, and only those overlapping a change are redrawn.
+    private static final int TILE_SIZE = 256;
+
+    // World-space margin around modules and links covering their ports, control points and line widths
+    private static final double STATIC_MARGIN = 20;
+
+    // Cached tiles, least recently shown first
+    private LinkedHashMap<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private boolean tilesComplete = false;
+
+    // Tiles from before the last zoom, shown scaled while tiles at the new zoom are drawn over a few frames
+    private LinkedHashMap<Long, BufferedImage> previewTiles = null;
+    private double previewZoom, previewFracX, previewFracY;
+
+    // Time spent drawing tiles each frame while the preview is shown
+    private static final long PREVIEW_BUDGET_MS = 25;
+
+    // Module bodies and labels, cached as images
+    private final ModuleSprites sprites = new ModuleSprites();
+
+    // Zoom, sub-pixel offset and antialiasing the cached tiles were drawn with
+    private double tileZoom, tileFracX, tileFracY;
+    private boolean tileAA;
+
     private boolean staticIsDirty = true;
-    private long lastDynamicPaint = 0;
+    // Redraws the modules whose displayed state has changed, at the dynamic refresh rate, while the view is shown
+    private final Timer refreshTimer;
+
+    // Screen area of the iterations per second display, and the value last shown there
+    private static final Rectangle ITR_DISPLAY_AREA = new Rectangle(0, 0, 240, 14);
+    private double shownItrPerSec = -1;
+
+    // World-space margin around a module covering its error flag
+    private static final double DYNAMIC_MARGIN = 35;
 
     // Zoom caps
     public static final double minZoom = 0.01;
     public static final double maxZoom = 6.0;
 
+    // World-space margin around the viewport within which modules are still drawn, so labels and error flags
+    // overhanging the edge aren't cut off
+    private static final double CULL_MARGIN = 150;
+
+    // Modules smaller than this many pixels across are drawn as plain boxes
+    private static final double LOD_BOX_PIXELS = 8;
+    // Below this zoom, labels and dynamic parts (LEDs, displays etc.) are too small to read and aren't drawn
+    private static final double LOD_DETAIL_ZOOM = 0.15;
+    // Below this zoom, links are drawn as straight lines between their control points
+    private static final double LOD_LINK_ZOOM = 0.1;
+
+    // Modules within the viewport, in drawing order, gathered at the start of each paint
+    private List<BaseModule> visibleModules = null;
+
+    // Modules flagged as displayed, whose visible parts the simulation keeps up to date
+    private List<BaseModule> displayedModules = new ArrayList<>();
+
+    // Entities and links being dragged, which are left out of the static layer's tiles and drawn over them instead
+    private final Set<Object> overlay = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<BaseModule> overlayModules = new ArrayList<>();
+    private final List<Link> overlayLinks = new ArrayList<>();
+
     public View() {
         setFocusable(true);
         ViewUtil listener = new ViewUtil();
@@ -64,6 +125,20 @@ public class View extends JPanel {
         // Fetch the preferred refresh rate
         Preferences prefs = Preferences.userNodeForPackage(View.class);
         dynamicRefreshRate = prefs.getInt("dynamic_refresh_rate", dynamicRefreshRate);
+
+        refreshTimer = new Timer(1000 / dynamicRefreshRate, e -> repaintChanged());
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
     }
 
     /***
@@ -87,6 +162,7 @@ public class View extends JPanel {
         Preferences prefs = Preferences.userNodeForPackage(View.class);
         dynamicRefreshRate = newRate;
         prefs.putInt("dynamic_refresh_rate", newRate);
+        refreshTimer.setDelay(1000 / newRate);
     }
 
     public void calcXForm() {
@@ -98,67 +174,409 @@ public class View extends JPanel {
         wToV.scale(zoom, zoom);
     }
 
-    public void paintStatic() {
-        // Renders the static portion of the viewport
-        if (staticCanvas == null || staticCanvas.getWidth() != getWidth() || staticCanvas.getHeight() != getHeight()) {
-            staticCanvas = getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight());
-            staticIsDirty = true;
+    /**
+     * Gets the world-space area shown in the viewport
+     * @param margin World-space margin to expand the area by
+     */
+    public Rectangle2D visibleArea(double margin) {
+        return worldArea(new Rectangle(0, 0, getWidth(), getHeight()), margin);
+    }
+
+    /**
+     * Gets the world-space area shown in part of the viewport
+     * @param margin World-space margin to expand the area by
+     */
+    private Rectangle2D worldArea(Rectangle r, double margin) {
+        double[] pt = {r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY()};
+
+        try {wToV.inverseTransform(pt, 0, pt, 0, 2);}
+        catch (Exception e) {
+            System.err.println("Non invertible transform");
         }
-        Graphics2D staticG = staticCanvas.createGraphics();
-        AffineTransform oldStatic = new AffineTransform(staticG.getTransform());
 
-        if (staticIsDirty) {
-            // Antialiasing
-            if (useAA) {
-                staticG.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return new Rectangle2D.Double(pt[0] - margin, pt[1] - margin,
+                pt[2] - pt[0] + 2 * margin, pt[3] - pt[1] + 2 * margin);
+    }
+
+    /**
+     * Whether a module is too small on screen for more than a plain box to be seen
+     */
+    private boolean isTiny(BaseModule m) {
+        return Math.max(m.w, m.h) * zoom < LOD_BOX_PIXELS;
+    }
+
+    /**
+     * Draws the static portion of the viewport (grid, static module parts and links) from the tile cache, first
+     * redrawing any tiles that are missing or overlap a change
+     * @param g Graphics context to draw with, in screen space
+     */
+    public void paintStatic(Graphics2D g) {
+        // The layer is offset by a whole number of pixels, so tiles are drawn pixel-aligned
+        double originX = camX + getWidth() / 2, originY = camY + getHeight() / 2;
+        int offX = (int) Math.floor(originX), offY = (int) Math.floor(originY);
+        double fracX = originX - offX, fracY = originY - offY;
+
+        if (staticIsDirty || zoom != tileZoom || fracX != tileFracX || fracY != tileFracY || useAA != tileAA) {
+            if (staticIsDirty || useAA != tileAA) {
+                previewTiles = null;
             }
-            else {
-                staticG.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            else if ((previewTiles == null || tilesComplete) && !tiles.isEmpty()) {
+                // Zoomed - the old tiles stand in, scaled, until enough new ones are drawn
+                previewTiles = tiles;
+                previewZoom = tileZoom;
+                previewFracX = tileFracX;
+                previewFracY = tileFracY;
+            }
+
+            tiles = new LinkedHashMap<>(64, 0.75f, true);
+            tileZoom = zoom;
+            tileFracX = fracX;
+            tileFracY = fracY;
+            tileAA = useAA;
+            staticIsDirty = false;
+
+            sprites.setAntialiasing(useAA);
+
+            Main.sim.spatial.takeChangedAreas();
+        }
+        else {
+            invalidateTiles(Main.sim.spatial.takeChangedAreas());
+        }
+
+        // Tiles covering the area being painted
+        Rectangle area = new Rectangle(0, 0, getWidth(), getHeight());
+        Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            area = area.intersection(clip);
+        }
+        if (area.isEmpty()) {
+            return;
+        }
+
+        int tx1 = Math.floorDiv(area.x - offX, TILE_SIZE);
+        int tx2 = Math.floorDiv(area.x + area.width - 1 - offX, TILE_SIZE);
+        int ty1 = Math.floorDiv(area.y - offY, TILE_SIZE);
+        int ty2 = Math.floorDiv(area.y + area.height - 1 - offY, TILE_SIZE);
+
+        // Find the tiles needing to be drawn, a row at a time
+        List<List<Long>> missingRows = new ArrayList<>();
+        for (int ty = ty1; ty <= ty2; ty++) {
+            List<Long> row = new ArrayList<>();
+            for (int tx = tx1; tx <= tx2; tx++) {
+                if (!tiles.containsKey(tileKey(tx, ty))) {
+                    row.add(tileKey(tx, ty));
+                }
+            }
+            if (!row.isEmpty()) {
+                missingRows.add(row);
             }
+        }
 
-            // Fill background
-            staticG.setTransform(oldStatic);
-            staticG.setColor(Colors.background);
-            staticG.fillRect(0, 0, getWidth(), getHeight());
-            // Grid
-            staticG.setColor(Colors.grid);
-            double xD = (camX + getWidth() / 2);
-            double yD = (camY + getHeight() / 2);
-            double xOff = xD % (Main.sim.grid * zoom);
-            double yOff = yD % (Main.sim.grid * zoom);
-            staticG.translate(xOff, yOff);
-            drawGrid(staticG);
-            staticG.setTransform(oldStatic);
-
-            // Draw modules - static
-            staticG.setTransform(oldStatic);
-            for (BaseModule m : Main.sim.getModules()) {
-                m.updateXForm();
-                staticG.transform(m.toView);
-                m.paintStatic(staticG);
-                staticG.setTransform(oldStatic);
+        if (previewTiles == null) {
+            List<Long> missing = new ArrayList<>();
+            for (List<Long> row : missingRows) {
+                missing.addAll(row);
             }
+            drawMissingTiles(missing);
+            tilesComplete = true;
+        }
+        else {
+            // Show the preview under whatever is ready, and draw new tiles for a limited time each frame
+            drawPreview(g, originX, originY);
 
-            // Draw links
-            staticG.transform(wToV);
-            for (Link l : Main.sim.getLinks()) {
-                if (l == null) {
-                    System.err.println("Warning: Null link encountered while drawing");
-                    continue;
+            long deadline = System.currentTimeMillis() + PREVIEW_BUDGET_MS;
+            int row = 0;
+            while (row < missingRows.size() && System.currentTimeMillis() < deadline) {
+                drawMissingTiles(missingRows.get(row++));
+            }
+
+            tilesComplete = row == missingRows.size();
+            if (tilesComplete) {
+                previewTiles = null;
+            }
+            else {
+                repaint();
+            }
+        }
+
+        for (int ty = ty1; ty <= ty2; ty++) {
+            for (int tx = tx1; tx <= tx2; tx++) {
+                BufferedImage tile = tiles.get(tileKey(tx, ty));
+                if (tile != null) {
+                    g.drawImage(tile, offX + tx * TILE_SIZE, offY + ty * TILE_SIZE, null);
                 }
-                l.draw(staticG);
             }
-            
-            staticG.setTransform(oldStatic);
+        }
 
-            // Static canvas is now up-to-date
-            staticIsDirty = false;
+        // Keep enough tiles to pan around without redrawing, dropping the least recently shown
+        int limit = 2 * (getWidth() / TILE_SIZE + 2) * (getHeight() / TILE_SIZE + 2);
+        Iterator<Long> eldest = tiles.keySet().iterator();
+        while (tiles.size() > limit) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Draws tiles into the cache
+     * @param missing Keys of the tiles to draw
+     */
+    private void drawMissingTiles(List<Long> missing) {
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        int mx1 = Integer.MAX_VALUE, mx2 = Integer.MIN_VALUE, my1 = Integer.MAX_VALUE, my2 = Integer.MIN_VALUE;
+        for (long key : missing) {
+            int tx = (int) (key >> 32), ty = (int) key;
+            mx1 = Math.min(mx1, tx);
+            mx2 = Math.max(mx2, tx);
+            my1 = Math.min(my1, ty);
+            my2 = Math.max(my2, ty);
+        }
+        int cols = mx2 - mx1 + 1, rows = my2 - my1 + 1;
+
+        // Long links cross many tiles, so when most of a block is missing it's drawn in one go and cut up
+        if (missing.size() * 2 >= cols * rows) {
+            BufferedImage block = drawTiles(mx1, my1, cols, rows);
+            for (long key : missing) {
+                int tx = (int) (key >> 32), ty = (int) key;
+                BufferedImage tile = getGraphicsConfiguration().createCompatibleImage(TILE_SIZE, TILE_SIZE);
+                Graphics2D tileG = tile.createGraphics();
+                tileG.drawImage(block, (mx1 - tx) * TILE_SIZE, (my1 - ty) * TILE_SIZE, null);
+                tileG.dispose();
+                tiles.put(key, tile);
+            }
+        }
+        else {
+            for (long key : missing) {
+                tiles.put(key, drawTiles((int) (key >> 32), (int) key, 1, 1));
+            }
+        }
+    }
+
+    /**
+     * Draws the tiles from before the last zoom, scaled to the current zoom
+     * @param originX Screen position of the world origin
+     * @param originY Screen position of the world origin
+     */
+    private void drawPreview(Graphics2D g, double originX, double originY) {
+        g.setColor(Colors.background);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        double scale = zoom / previewZoom;
+        double size = TILE_SIZE * scale;
+        for (Map.Entry<Long, BufferedImage> entry : previewTiles.entrySet()) {
+            long key = entry.getKey();
+            double x = originX + ((int) (key >> 32) * TILE_SIZE - previewFracX) * scale;
+            double y = originY + ((int) key * TILE_SIZE - previewFracY) * scale;
+
+            if (x < getWidth() && y < getHeight() && x + size > 0 && y + size > 0) {
+                AffineTransform at = new AffineTransform();
+                at.translate(x, y);
+                at.scale(scale, scale);
+                g.drawImage(entry.getValue(), at, null);
+            }
+        }
+    }
+
+    /**
+     * Draws a block of tiles of the static layer as one image
+     * @param tx Column of the top-left tile
+     * @param ty Row of the top-left tile
+     */
+    private BufferedImage drawTiles(int tx, int ty, int cols, int rows) {
+        int width = cols * TILE_SIZE, height = rows * TILE_SIZE;
+        BufferedImage image = getGraphicsConfiguration().createCompatibleImage(width, height);
+        Graphics2D g = image.createGraphics();
+
+        // Antialiasing
+        if (useAA) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        }
+        else {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        }
+
+        // Fill background
+        g.setColor(Colors.background);
+        g.fillRect(0, 0, width, height);
+
+        // Pixel position of the world origin
+        double x0 = tileFracX - tx * TILE_SIZE;
+        double y0 = tileFracY - ty * TILE_SIZE;
+
+        // Grid
+        g.setColor(Colors.grid);
+        drawGrid(g, x0, y0, width, height);
+
+        // World-space area covered
+        double minX = -x0 / zoom, minY = -y0 / zoom;
+        double maxX = (width - x0) / zoom, maxY = (height - y0) / zoom;
+
+        AffineTransform toTile = new AffineTransform();
+        toTile.translate(x0, y0);
+        toTile.scale(zoom, zoom);
+
+        // Draw modules - static
+        AffineTransform toPixels = new AffineTransform();
+        for (BaseModule m : Main.sim.spatial.query(BaseModule.class,
+                minX - STATIC_MARGIN, minY - STATIC_MARGIN, maxX + STATIC_MARGIN, maxY + STATIC_MARGIN)) {
+            if (!overlay.contains(m)) {
+                drawStaticModule(g, m, toPixels, toTile, x0, y0);
+            }
+        }
+
+        // Draw links, a colour at a time
+        LinkBatch batch = new LinkBatch(zoom < LOD_LINK_ZOOM);
+        for (Link l : Main.sim.spatial.query(Link.class,
+                minX - STATIC_MARGIN, minY - STATIC_MARGIN, maxX + STATIC_MARGIN, maxY + STATIC_MARGIN)) {
+            if (!overlay.contains(l)) {
+                batch.add(l);
+            }
+        }
+        g.setTransform(toTile);
+        batch.draw(g);
+
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws a module's static parts, from the sprite cache where possible
+     * @param toPixels Transform from pixel space
+     * @param toLayer Transform from world space
+     * @param x0 Pixel position of the world origin
+     * @param y0 Pixel position of the world origin
+     */
+    private void drawStaticModule(Graphics2D g, BaseModule m, AffineTransform toPixels, AffineTransform toLayer,
+                                  double x0, double y0) {
+        if (isTiny(m)) {
+            g.setTransform(toLayer);
+            g.transform(m.toWorld);
+            g.setColor(Colors.moduleFill);
+            g.fill(new Rectangle2D.Double(-m.w / 2, -m.h / 2, m.w, m.h));
+            return;
+        }
+
+        g.setTransform(toPixels);
+        if (!sprites.drawBody(g, m, zoom, x0 + m.pos.x * zoom, y0 + m.pos.y * zoom)) {
+            g.setTransform(toLayer);
+            g.transform(m.toWorld);
+            m.paintStatic(g);
+        }
+    }
+
+    /**
+     * Draws the static parts of the modules and links in the overlay, over the static layer
+     * @param old Transform from pixel space
+     * @param area World-space area being painted
+     */
+    private void paintOverlay(Graphics2D g, AffineTransform old, Rectangle2D area) {
+        AffineTransform toView = new AffineTransform(old);
+        toView.concatenate(wToV);
+        double x0 = camX + getWidth() / 2, y0 = camY + getHeight() / 2;
+
+        for (BaseModule m : overlayModules) {
+            double hw = Math.max(m.w, m.h) / 2;
+            if (area.intersects(m.pos.x - hw, m.pos.y - hw, 2 * hw, 2 * hw)) {
+                drawStaticModule(g, m, old, toView, x0, y0);
+            }
+        }
+
+        LinkBatch batch = new LinkBatch(zoom < LOD_LINK_ZOOM);
+        for (Link l : overlayLinks) {
+            if (l.path.getBounds().intersects(area)) {
+                batch.add(l);
+            }
+        }
+        g.setTransform(toView);
+        batch.draw(g);
+        g.setTransform(old);
+    }
+
+    /**
+     * Moves entities and the links attached to them to the overlay, which is drawn over the static layer each frame,
+     * so that they can be moved without redrawing the static layer's tiles. The tiles are redrawn once, without them.
+     * @param entities Entities being moved
+     * @param links Links whose paths change as they move
+     */
+    public void beginOverlay(Collection<? extends PickableEntity> entities, Collection<Link> links) {
+        endOverlay();
+
+        for (PickableEntity e : entities) {
+            overlay.add(e);
+            if (e instanceof BaseModule) {
+                overlayModules.add((BaseModule) e);
+            }
+            Main.sim.spatial.setFloating(e, true);
+        }
+        for (Link l : links) {
+            overlay.add(l);
+            overlayLinks.add(l);
+            Main.sim.spatial.setFloating(l, true);
+        }
+        repaint();
+    }
+
+    /**
+     * Returns the overlay's entities and links to the static layer, whose tiles are redrawn where they now are
+     */
+    public void endOverlay() {
+        for (Object o : overlay) {
+            Main.sim.spatial.setFloating(o, false);
+        }
+        overlay.clear();
+        overlayModules.clear();
+        overlayLinks.clear();
+        repaint();
+    }
+
+    /**
+     * Drops the cached tiles overlapping changed areas
+     * @param areas World-space areas, or null if everything has changed
+     */
+    private void invalidateTiles(List<Rectangle2D> areas) {
+        if (areas == null) {
+            tiles.clear();
+            return;
+        }
+
+        for (Rectangle2D r : areas) {
+            int tx1 = tileAt(r.getMinX() - STATIC_MARGIN, tileFracX);
+            int tx2 = tileAt(r.getMaxX() + STATIC_MARGIN, tileFracX);
+            int ty1 = tileAt(r.getMinY() - STATIC_MARGIN, tileFracY);
+            int ty2 = tileAt(r.getMaxY() + STATIC_MARGIN, tileFracY);
+
+            if ((long) (tx2 - tx1 + 1) * (ty2 - ty1 + 1) > tiles.size()) {
+                tiles.keySet().removeIf(key -> {
+                    int tx = (int) (key >> 32), ty = (int) (long) key;
+                    return tx >= tx1 && tx <= tx2 && ty >= ty1 && ty <= ty2;
+                });
+            }
+            else {
+                for (int ty = ty1; ty <= ty2; ty++) {
+                    for (int tx = tx1; tx <= tx2; tx++) {
+                        tiles.remove(tileKey(tx, ty));
+                    }
+                }
+            }
         }
     }
 
+    /**
+     * Finds the tile column (or row) containing a world-space coordinate
+     */
+    private int tileAt(double world, double frac) {
+        return (int) Math.floor((world * zoom + frac) / TILE_SIZE);
+    }
+
+    private static long tileKey(int tx, int ty) {
+        return ((long) tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+
     @Override
     public void paintComponent(Graphics oldG) {
-        lastDynamicPaint = System.currentTimeMillis();
         Graphics2D g = (Graphics2D) oldG;
 
         // Antialiasing
@@ -171,18 +589,39 @@ public class View extends JPanel {
 
         // Refresh the view's transform
         calcXForm();
+        // Let the tool apply changes it has coalesced since the last frame
+        if (curTool != null) {
+            curTool.beforePaint();
+        }
         // Store the original view transform for restoration to a known state
         AffineTransform old = new AffineTransform(g.getTransform());
 
+        // Only modules within the area being painted are drawn - when just changed modules are repainted, the rest
+        // of the frame is kept from before
+        Rectangle clip = g.getClipBounds();
+        Rectangle2D area = clip == null ? visibleArea(CULL_MARGIN) : worldArea(clip, CULL_MARGIN);
+        visibleModules = Main.sim.spatial.query(BaseModule.class,
+                area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY());
+        updateDisplayed(visibleModules, clip == null || clip.contains(new Rectangle(0, 0, getWidth(), getHeight())));
+        boolean detailed = zoom >= LOD_DETAIL_ZOOM;
+
         // Static stuff is drawn below all dynamic stuff
-        paintStatic();
-        g.drawImage(staticCanvas, 0, 0, getWidth(), getHeight(), null);
+        paintStatic(g);
+        g.setTransform(old);
+        if (!overlay.isEmpty()) {
+            paintOverlay(g, old, area);
+        }
 
         // Draw modules - dynamic
-        for (BaseModule m : Main.sim.getModules()) {
+        for (BaseModule m : visibleModules) {
+            if (clip == null || clip.contains(dynamicBounds(m))) {
+                m.displayChanged = false;
+            }
             m.updateXForm();
             g.transform(m.toView);
-            m.paintDynamic(g);
+            if (detailed && !isTiny(m)) {
+                m.paintDynamic(g);
+            }
 
             if (m.error) {
                 drawError(g);
@@ -192,14 +631,19 @@ public class View extends JPanel {
         }
 
         // Labels are drawn over all module renderings
-        for (BaseModule m : Main.sim.getModules()) {
-            g.transform(m.toView);
-            m.drawLabel(g);
-            g.setTransform(old);
+        if (detailed) {
+            for (BaseModule m : visibleModules) {
+                Point2D p = wToV.transform(new Point2D.Double(m.pos.x, m.pos.y), null);
+                if (!sprites.drawLabel(g, m, zoom, p.getX(), p.getY())) {
+                    g.transform(m.toView);
+                    m.drawLabel(g);
+                    g.setTransform(old);
+                }
+            }
         }
 
         // Highlighted bounds are drawn over labels
-        for (BaseModule m : Main.sim.getModules()) {
+        for (BaseModule m : visibleModules) {
             if (m.selected) {
                 g.transform(m.toView);
                 m.drawBounds(g);
@@ -218,6 +662,9 @@ public class View extends JPanel {
         g.setTransform(old);
 
         // Draw iterations per second
+        if (clip == null || clip.intersects(ITR_DISPLAY_AREA)) {
+            shownItrPerSec = Main.sim.itrPerSec;
+        }
         g.setColor(Color.BLACK);
         g.setFont(new Font("Monospaced", Font.BOLD, 10));
         DecimalFormat df = new DecimalFormat("#.##");
@@ -227,6 +674,37 @@ public class View extends JPanel {
         g.drawString(num + " iterations/s", 10, 10);
     }
 
+    /**
+     * Flags the modules being drawn as displayed, and has the simulation bring their visible parts up to date. When
+     * the whole view is drawn, modules no longer in view are unflagged, so the simulation stops updating their
+     * visible parts.
+     * @param drawn Modules being drawn
+     * @param wholeView Whether the whole view is being drawn
+     */
+    private void updateDisplayed(List<BaseModule> drawn, boolean wholeView) {
+        if (wholeView) {
+            Set<BaseModule> inView = Collections.newSetFromMap(new IdentityHashMap<>());
+            inView.addAll(drawn);
+            for (BaseModule m : displayedModules) {
+                if (!inView.contains(m)) {
+                    m.displayed = false;
+                }
+            }
+            displayedModules = new ArrayList<>(drawn);
+        }
+
+        for (BaseModule m : drawn) {
+            if (!m.displayed) {
+                // Visible parts belong to the simulation; refreshing them flags the module for redrawing
+                m.displayed = true;
+                Main.sim.submit(m::updateDisplay);
+                if (!wholeView) {
+                    displayedModules.add(m);
+                }
+            }
+        }
+    }
+
     /**
      * Draws a module's error flag
      */
@@ -241,9 +719,11 @@ public class View extends JPanel {
     }
 
     /**
-     * Draws the background grid
+     * Draws the background grid over a block of tiles
+     * @param x0 Pixel position of the world origin
+     * @param y0 Pixel position of the world origin
      */
-    private void drawGrid(Graphics2D g) {
+    private void drawGrid(Graphics2D g, double x0, double y0, int width, int height) {
         double grid = zoom * Main.sim.grid;
 
         // When extremely zoomed-out, displaying the grid is costly and pointless
@@ -251,22 +731,16 @@ public class View extends JPanel {
             return;
         }
 
-        int xNum = (int)(getWidth() / grid);
-        int yNum = (int)(getHeight() / grid);
+        // Start a line before the tile, as antialiased lines spill into the neighbouring pixel
+        double startX = x0 - Math.floor(x0 / grid) * grid - grid;
+        double startY = y0 - Math.floor(y0 / grid) * grid - grid;
 
-        AffineTransform oldTransform = new AffineTransform(g.getTransform());
-        Line2D verticalLine = new Line2D.Double(0.0, -grid, 0.0, getHeight() + grid);
-        Line2D horizontalLine = new Line2D.Double(-grid, 0.0, getWidth() + grid, 0.0);
-        for (int i = 0; i <= xNum + 1; i++) {
-            g.draw(verticalLine);
-            g.translate(grid, 0.0);
+        for (double x = startX; x < width + 1; x += grid) {
+            g.draw(new Line2D.Double(x, -1, x, height + 1));
         }
-        g.setTransform(oldTransform);
-        for (int i = 0; i <= yNum + 1; i++) {
-            g.draw(horizontalLine);
-            g.translate(0.0, grid);
+        for (double y = startY; y < height + 1; y += grid) {
+            g.draw(new Line2D.Double(-1, y, width + 1, y));
         }
-        g.setTransform(oldTransform);
     }
 
     /**
@@ -314,34 +788,46 @@ public class View extends JPanel {
         camX -= newScreenPt.x - x;
         camY -= newScreenPt.y - y;
         calcXForm();
-        //redraw
-        flagStaticRedraw();
+        //redraw - the static layer is redrawn for the new zoom, with a scaled preview shown meanwhile
+        repaint();
     }
 
     /***
-     * Flags the static canvas as dirty, triggering a redraw of all static parts on the next view update
+     * Flags the whole static layer as dirty, triggering a redraw of all static parts on the next view update.
+     * Changes to the design's layout are picked up without this, through the simulation's spatial index.
      */
     public void flagStaticRedraw() {
         staticIsDirty = true;
         repaint();
     }
 
-    /***
-     * "Soft" request for a redraw, used for simulation updates. Capped at 30Hz refresh rate.
+    /**
+     * Requests a repaint of the visible modules whose displayed state has changed since they were last drawn.
+     * Called on the Swing thread at the dynamic refresh rate; the simulation only flags what has changed, and
+     * never requests redraws itself.
      */
-    public void flagDynamicRedraw() {
-        long currentTime = System.currentTimeMillis();
-        if (abs(currentTime - lastDynamicPaint) > (1000 / dynamicRefreshRate)) {
-            repaint();
-        }
-        else {
-            // persistence-of-vision simulation
-            for (BaseModule m : Main.sim.getModules()) {
-                for (VisiblePart p : m.parts) {
-                    p.povTick();
-                }
+    private void repaintChanged() {
+        Rectangle2D area = visibleArea(DYNAMIC_MARGIN);
+        for (BaseModule m : Main.sim.spatial.query(BaseModule.class,
+                area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY())) {
+            if (m.displayChanged) {
+                m.displayChanged = false;
+                repaint(dynamicBounds(m));
             }
         }
+
+        if (Main.sim.itrPerSec != shownItrPerSec) {
+            repaint(ITR_DISPLAY_AREA);
+        }
+    }
+
+    /**
+     * Gets the part of the viewport a module's dynamic parts and error flag may cover
+     */
+    private Rectangle dynamicBounds(BaseModule m) {
+        double hw = Math.max(m.w, m.h) / 2 + DYNAMIC_MARGIN;
+        Shape bounds = wToV.createTransformedShape(new Rectangle2D.Double(m.pos.x - hw, m.pos.y - hw, 2 * hw, 2 * hw));
+        return bounds.getBounds().intersection(new Rectangle(0, 0, getWidth(), getHeight()));
     }
 
 	public void resetView() {
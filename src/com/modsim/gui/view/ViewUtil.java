@@ -12,7 +12,6 @@ import com.modsim.modules.ports.Output;
 import com.modsim.modules.parts.Port;
 import com.modsim.simulator.*;
 import com.modsim.tools.*;
-import com.modsim.util.Path;
 import com.modsim.util.Vec2;
 
 /**
@@ -31,22 +30,25 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
     public static int snapGridSize = 25;
 
     /**
-     * Finds a clicked link by approximate (binary-search) closest point on curve
+     * Finds a clicked link by closest point on its flattened path
      * @param pt World-space point to check
      * @return Link at point, or null if there is none
      */
     public static Link worldSpace_linkAt(Vec2 pt) {
         Link closest = null;
         double dist = 15.0;
-        for (Link link : Main.sim.getLinks()) {
-            Path.PointInfo info = link.path.approxClosestPoint(pt, 6);
 
-            if (info.dist < dist) {
-                if (info.dist < 2.0) {
+        // Only links passing near the point need checking
+        List<Link> nearby = Main.sim.spatial.query(Link.class, pt.x - dist, pt.y - dist, pt.x + dist, pt.y + dist);
+        for (Link link : nearby) {
+            double linkDist = link.path.distanceTo(pt, dist);
+
+            if (linkDist < dist) {
+                if (linkDist < 2.0) {
                     return link;
                 }
                 closest = link;
-                dist = info.dist;
+                dist = linkDist;
             }
         }
 
@@ -66,9 +68,13 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
         Vec2 worldPos = screenToWorld(new Vec2(x, y), false);
 
         synchronized (Main.sim) {
-            int i = Main.sim.getModules().size() - 1;
+            // Ports lie on their module's edges, so only modules near the point need checking
+            List<BaseModule> nearby = Main.sim.spatial.query(BaseModule.class,
+                    worldPos.x - portR, worldPos.y - portR, worldPos.x + portR, worldPos.y + portR);
+
+            int i = nearby.size() - 1;
             for (; i >= 0; i--) {
-                BaseModule m = Main.sim.getModules().get(i);
+                BaseModule m = nearby.get(i);
 
                 double[] pt = {worldPos.x, worldPos.y};
 
@@ -156,8 +162,10 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
 
         Vec2 clickPt = new Vec2(pt);
 
-        // Loop the entities
-        for (PickableEntity e : Main.sim.getEntities()) {
+        // Loop the entities under the point
+        List<PickableEntity> under = Main.sim.spatial.query(PickableEntity.class,
+                clickPt.x, clickPt.y, clickPt.x, clickPt.y);
+        for (PickableEntity e : under) {
             if (e.intersects(clickPt)) {
                 return e;
             }
@@ -174,8 +182,8 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
     public static List<PickableEntity> worldSpace_entitiesWithin(double x1, double y1, double x2, double y2) {
         List<PickableEntity> result = new ArrayList<PickableEntity>();
 
-        // Loop the entities
-        for (PickableEntity e : Main.sim.getEntities()) {
+        // Loop the entities overlapping the area
+        for (PickableEntity e : Main.sim.spatial.query(PickableEntity.class, x1, y1, x2, y2)) {
             if (e.within(x1, y1, x2, y2)) {
                 result.add(e);
             }
@@ -207,8 +215,8 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
         x2 = pt[2];
         y2 = pt[3];
 
-        // Loop the entities
-        for (PickableEntity e : Main.sim.getEntities()) {
+        // Loop the entities overlapping the area
+        for (PickableEntity e : Main.sim.spatial.query(PickableEntity.class, x, y, x2, y2)) {
             if (e.within(x, y, x2, y2)) {
                 result.add(e);
             }
@@ -336,7 +344,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             camDrag = true;
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void mouseReleased(MouseEvent e) {
@@ -367,7 +375,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             camDrag = false;
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void mouseDragged(MouseEvent e) {
@@ -382,7 +390,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             Main.ui.view.curTool = tool.mouseDrag(e.getX(), e.getY());
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void mouseMoved(MouseEvent e) {
@@ -404,9 +412,8 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
 
         if (tool != null) {
             Main.ui.view.curTool = tool.mouseMove(e.getX(), e.getY());
+            Main.ui.view.repaint();
         }
-
-        Main.ui.view.flagDynamicRedraw();
     }
 
     public void mouseWheelMoved(MouseWheelEvent e) {
@@ -415,7 +422,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             Main.ui.view.zoom(e.getX(), e.getY(), e.getPreciseWheelRotation());
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void keyPressed(KeyEvent e) {
@@ -440,7 +447,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             v.curTool = v.curTool.keyDown(e.getKeyCode());
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void keyReleased(KeyEvent e) {
@@ -449,7 +456,7 @@ public class ViewUtil implements MouseListener, MouseMotionListener, MouseWheelL
             v.curTool.keyUp(e.getKeyCode());
         }
 
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
     }
 
     public void keyTyped(KeyEvent e) {}
@@ -110,11 +110,6 @@ public class AddSub extends BaseModule {
         int b = dInB.getVal().getUInt();
         BinData cInV = cIn.getVal();
 
-        int func = cInV.getUInt() & 3;
-        for (int i = 0; i < cLEDs.size(); i++) {
-            cLEDs.get(i).setEnabled(i == func);
-        }
-
         // Carry bit
         int carry = cInV.getBit(2);
 
@@ -155,11 +150,6 @@ public class AddSub extends BaseModule {
         }
         BinData boolOut = new BinData();
         boolOut.setBool(bool);
-        boolLED.setEnabled(bool);
-
-        // Display
-        carryLED.setEnabled(carryOut == 1);
-        leds.setVal(r);
 
         // Outputs
         rOut.setVal(r);
@@ -167,6 +157,18 @@ public class AddSub extends BaseModule {
         cOut.setVal(cOutVal);
     }
 
+    @Override
+    public void updateDisplay() {
+        int func = cIn.getVal().getUInt() & 3;
+        for (int i = 0; i < cLEDs.size(); i++) {
+            cLEDs.get(i).setEnabled(i == func);
+        }
+
+        boolLED.setEnabled(bOut.getVal().getBit(0) == BinData.HIGH);
+        carryLED.setEnabled(cOut.getVal().getBit(2) == BinData.HIGH);
+        leds.setVal(rOut.getVal());
+    }
+
     @Override
     public AvailableModules getModType() {
         return AvailableModules.ADDSUB;
@@ -1,6 +1,7 @@
 package com.modsim.modules;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
@@ -37,6 +38,11 @@ public abstract class BaseModule extends PickableEntity {
     public AffineTransform toView = new AffineTransform();
 
     public int orientation = 0;
+
+    // Position and orientation toWorld was last calculated for
+    private double xformX = Double.NaN, xformY = Double.NaN;
+    private int xformOrientation = 0;
+
     public String label = "";
     public int labelSize = 0;
 
@@ -46,13 +52,24 @@ public abstract class BaseModule extends PickableEntity {
     public List<BidirPort> bidirs = new ArrayList<>();
     public List<VisiblePart> parts = new ArrayList<>();
 
-    public int ID;
+    // Assigned by the simulation when the module is first added, and kept through saving and loading
+    public int ID = -1;
 
     /**
      * Flag used to provide visual error feedback
       */
     public boolean error = false;
 
+    /**
+     * Set when the module's dynamic parts or error flag change, so the view knows to redraw it
+     */
+    public volatile boolean displayChanged = true;
+
+    /**
+     * Set by the view while the module is on screen. Only then are its visible parts kept up to date.
+     */
+    public volatile boolean displayed = false;
+
     /**
      * Get the object's ID, used for file operations
      * @return The ID
@@ -188,7 +205,8 @@ public abstract class BaseModule extends PickableEntity {
     }
 
     /**
-     * Draws static components for the module, in local space
+     * Draws static components for the module, in local space. The result is cached and shared by all modules of
+     * the same type, so it must not depend on the module's state.
      * @param g Graphics context to render with
      */
     public void paintStatic(Graphics2D g) {
@@ -202,6 +220,33 @@ public abstract class BaseModule extends PickableEntity {
      */
     public void paintDynamic(Graphics2D g) { drawDynamicParts(g); }
 
+    /**
+     * Gets the area covered by the module's label, in local space
+     * @return The label's bounds, or null if the module has no label
+     */
+    public Rectangle2D getLabelBounds() {
+        if (label.isEmpty()) {
+            return null;
+        }
+
+        double height, margin;
+        Font font;
+        if (labelSize == 0) {
+            height = 27;
+            margin = 20;
+            font = Fonts.label;
+        }
+        else {
+            height = 54;
+            margin = 40;
+            font = Fonts.bigLabel;
+        }
+
+        Rectangle2D r = font.getStringBounds(label, new FontRenderContext(null, true, true));
+        double width = Math.max(w, r.getWidth() + margin);
+        return new Rectangle2D.Double(-width / 2, h / 2 + 25, width, height);
+    }
+
     /**
      * Displays the module's label in local space
      * @param g Graphics context to render with
@@ -501,25 +546,56 @@ public abstract class BaseModule extends PickableEntity {
                 orientation = (orientation + 2) % 4;
                 break;
         }
+
+        updateXForm();
     }
 
     /**
-     * Updates the object's transformation
+     * Snaps the module to the grid as it moves
+     */
+    @Override
+    public void onMove(Vec2 newPos) {
+        updateXForm();
+    }
+
+    /**
+     * Updates the object's transformation. The world transform and the paths of attached links are only
+     * recalculated when the module has moved or rotated, so this is cheap to call every frame.
      */
     public void updateXForm() {
+        if (updateWorldXForm()) {
+            // Update links
+            for (Port p : ports) {
+                if (p.link != null) p.link.updatePath();
+            }
+        }
+
+        toView = new AffineTransform(Main.ui.view.wToV);
+        toView.concatenate(toWorld);
+    }
+
+    /**
+     * Snaps the module to the grid and updates its world transform, leaving the paths of attached links as they
+     * were. Used when moving many modules at once, so that each link's path is recalculated once afterwards.
+     * @return True if the module had moved or rotated
+     */
+    public boolean updateWorldXForm() {
         snapToGrid();
 
+        if (pos.x == xformX && pos.y == xformY && orientation == xformOrientation) {
+            return false;
+        }
+
+        xformX = pos.x;
+        xformY = pos.y;
+        xformOrientation = orientation;
+
         toWorld = new AffineTransform();
         toWorld.translate(pos.x, pos.y);
         toWorld.rotate((Math.PI / 2) * orientation);
 
-        toView = new AffineTransform(Main.ui.view.wToV);
-        toView.concatenate(toWorld);
-
-        // Update links
-        for (Port p : ports) {
-            if (p.link != null) p.link.updatePath();
-        }
+        Main.sim.spatial.update(this);
+        return true;
     }
 
     /**
@@ -657,6 +733,13 @@ public abstract class BaseModule extends PickableEntity {
      */
     public abstract void propagate();
 
+    /**
+     * Shows the module's current state on its visible parts (LEDs and the like). This is kept apart from
+     * propagate, so the simulation only does it for displayed modules; the view calls it when a module comes into
+     * view.
+     */
+    public void updateDisplay() {}
+
     /**
      * Propagates a bidirectional port's directionality.<br/>Note: this is recursive through the setMode() calls!
      * @param root Port to base directionality on
@@ -96,12 +96,10 @@ public class Clock extends BaseModule {
         // Phase 1
         BinData p1 = new BinData();
         p1.setBooleanBit(0, step == 1);
-        phase1.setEnabled(step == 1);
 
         // Phase 2
         BinData p2 = new BinData();
         p2.setBooleanBit(0, step == 3);
-        phase2.setEnabled(step == 3);
 
         // Reset signal
         p2.setBooleanBit(1, sendReset);
@@ -116,6 +114,12 @@ public class Clock extends BaseModule {
         outputs.get(1).setVal(p2);
     }
 
+    @Override
+    public void updateDisplay() {
+        phase1.setEnabled(step == 1);
+        phase2.setEnabled(step == 3);
+    }
+
     @Override
     public void dataIn(HashMap<String, String> data) {
         super.dataIn(data);
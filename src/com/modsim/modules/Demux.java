@@ -56,8 +56,6 @@ public class Demux extends BaseModule {
             addPart(l);
         }
 
-        controlLEDs.get(0).setEnabled(true);
-
         dataLEDs = new LEDRow(35, 70);
         addPart(dataLEDs);
 
@@ -93,14 +91,20 @@ public class Demux extends BaseModule {
         for (int i = 0; i < dataOutputs.size(); i++) {
             if (i == outSel) {
                 dataOutputs.get(i).setVal(dataIn.getVal());
-                controlLEDs.get(i).setEnabled(true);
             } else {
                 dataOutputs.get(i).setVal(new BinData(0));
-                controlLEDs.get(i).setEnabled(false);
             }
         }
 
         controlOut.setVal(controlIn.getVal());
+    }
+
+    @Override
+    public void updateDisplay() {
+        final int outSel = controlIn.getVal().getUInt() & 3;
+        for (int i = 0; i < controlLEDs.size(); i++) {
+            controlLEDs.get(i).setEnabled(i == outSel);
+        }
 
         dataLEDs.setVal(dataIn.getVal());
     }
@@ -78,13 +78,16 @@ public class Fanout extends BaseModule {
 
     @Override
     public void propagate() {
-        dLEDs.setVal(inputs.get(0).getVal());
-
         for (Output o : outputs) {
             o.setVal(inputs.get(0).getVal());
         }
     }
 
+    @Override
+    public void updateDisplay() {
+        dLEDs.setVal(inputs.get(0).getVal());
+    }
+
     @Override
     public AvailableModules getModType() {
         return AvailableModules.FANOUT;
@@ -22,6 +22,8 @@ public class LEDMatrix extends BaseModule {
     private final Input contIn;
     
     private final List<List<LEDRow>> matrix;
+    // Values shown on each row of LEDs
+    private final BinData[][] values = new BinData[16][4];
 	private int previousRow = 0;
 	private boolean persist = false;
 	
@@ -49,6 +51,7 @@ public class LEDMatrix extends BaseModule {
         	}
         	y-=6;
         	matrix.add(row);
+        	Arrays.fill(values[i], new BinData(0));
         }
 
         for (List<LEDRow> list : matrix){
@@ -87,16 +90,22 @@ public class LEDMatrix extends BaseModule {
 	@Override
 	public void propagate() {
 		if(!persist){
-			List<LEDRow> prevleds = matrix.get(previousRow);
-			for(int i=0; i<4; i++){
-				prevleds.get(i).setVal(new BinData(0));
-			}
+			Arrays.fill(values[previousRow], new BinData(0));
 		}
 		final int sel = contIn.getVal().getUInt() & 15;
 		previousRow = sel;
-		List<LEDRow> leds = matrix.get(sel);
 		for(int i=0; i<4; i++){
-			leds.get(i).setVal(dIn.get(i).getVal());
+			values[sel][i] = new BinData(dIn.get(i).getVal());
+		}
+	}
+
+	@Override
+	public void updateDisplay() {
+		for(int r=0; r<16; r++){
+			List<LEDRow> leds = matrix.get(r);
+			for(int i=0; i<4; i++){
+				leds.get(i).setVal(values[r][i]);
+			}
 		}
 	}
 	
@@ -107,10 +116,11 @@ public class LEDMatrix extends BaseModule {
 	
 	public void turnOffPersist(){
 		persist = false;
-		for(List<LEDRow> row : matrix){
-			for(LEDRow group : row){
-				group.setVal(new BinData(0));
-			}
+		for(BinData[] row : values){
+			Arrays.fill(row, new BinData(0));
+		}
+		if(displayed){
+			updateDisplay();
 		}
 	}
 	
@@ -1,8 +1,15 @@
 package com.modsim.modules;
 
 import java.awt.*;
-import java.util.List;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 
@@ -42,6 +49,16 @@ public class Link {
         return linkInd;
     }
 
+    /**
+     * Gives up the link's ID, for reuse while the link is out of the simulation
+     * @return The ID given up, or -1 if the link had none
+     */
+    public int releaseLinkID() {
+        int id = linkInd;
+        linkInd = -1;
+        return id;
+    }
+
     /**
      * Creates a new link between two ports, which may be reversed depending on type of source and target.
      * @param source The first clicked port
@@ -100,45 +117,7 @@ public class Link {
             target.link = newLink;
 
             // Pick direction of link
-
-            // If we're between two bi-dirs, the user's word is law
-            if (!source.hasDirection() && !target.hasDirection()) {
-                // (attempt to) create link in direction chosen
-                newLink.src = source;
-                newLink.targ = target;
-                newLink.path = path;
-
-                source.setMode(Port.Mode.MODE_OUTPUT);
-                target.setMode(Port.Mode.MODE_INPUT);
-            }
-            else if (source.canOutput() && target.canInput()) {
-                newLink.src = source;
-                newLink.targ = target;
-                newLink.path = path;
-
-                if (!source.hasDirection()) {
-                    source.setMode(Port.Mode.MODE_OUTPUT);
-                }
-
-                if (!target.hasDirection()) {
-                    target.setMode(Port.Mode.MODE_INPUT);
-                }
-            }
-            else if (source.canInput() && target.canOutput()) {
-                newLink.src = target;
-                newLink.targ = source;
-                path.reverse();
-                newLink.path = path;
-
-                if (!source.hasDirection()) {
-                    source.setMode(Port.Mode.MODE_INPUT);
-                }
-
-                if (!target.hasDirection()) {
-                    target.setMode(Port.Mode.MODE_OUTPUT);
-                }
-            }
-            else {
+            if (!newLink.orient(source, target, path)) {
                 JOptionPane.showMessageDialog(Main.ui.frame,
                         (new Throwable()).getStackTrace(),
                         "Unknown error during link creation",
@@ -159,7 +138,7 @@ public class Link {
                 target.link = null;
 
                 for (BaseModule m : modules) {
-                    m.error = true;
+                    Main.sim.flagError(m);
                 }
 
                 Main.opStack.cancelCompoundOp();
@@ -169,12 +148,267 @@ public class Link {
             // Changes are done
             Main.opStack.endCompoundOp();
 
-            newLink.targ.setVal(newLink.src.getVal());
+            Main.sim.submit(() -> newLink.targ.setVal(newLink.src.getVal()));
 
             return newLink;
         }
     }
 
+    /**
+     * Sets the link's source, target and path from a pair of clicked ports, switching the direction of
+     * bi-directional ports to suit.
+     * @return False if the ports cannot be linked in either direction
+     */
+    private boolean orient(Port source, Port target, Path path) {
+        // If we're between two bi-dirs, the user's word is law
+        if (!source.hasDirection() && !target.hasDirection()) {
+            // (attempt to) create link in direction chosen
+            src = source;
+            targ = target;
+            this.path = path;
+
+            source.setMode(Port.Mode.MODE_OUTPUT);
+            target.setMode(Port.Mode.MODE_INPUT);
+        }
+        else if (source.canOutput() && target.canInput()) {
+            src = source;
+            targ = target;
+            this.path = path;
+
+            if (!source.hasDirection()) {
+                source.setMode(Port.Mode.MODE_OUTPUT);
+            }
+
+            if (!target.hasDirection()) {
+                target.setMode(Port.Mode.MODE_INPUT);
+            }
+        }
+        else if (source.canInput() && target.canOutput()) {
+            src = target;
+            targ = source;
+            path.reverse();
+            this.path = path;
+
+            if (!source.hasDirection()) {
+                source.setMode(Port.Mode.MODE_INPUT);
+            }
+
+            if (!target.hasDirection()) {
+                target.setMode(Port.Mode.MODE_OUTPUT);
+            }
+        }
+        else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a link for a bulk load. Unlike createLink, this does not check for loops, record operations or
+     * propagate values - callers must follow up with findLoops and a settling propagation once every link
+     * is in place.
+     * @param source The link's source port, as stored
+     * @param target The link's target port, as stored
+     * @param path A path to display for the link
+     * @return New link, or null if the ports cannot be linked
+     */
+    public static Link bulkLink(Port source, Port target, Path path) {
+        if (source == null || target == null) {
+            System.err.println("No connect: Port(s) do not exist");
+            return null;
+        }
+        else if (source == target || source.owner == target.owner) {
+            System.err.println("No connect: Link to self");
+            return null;
+        }
+        else if (source.link != null || target.link != null) {
+            System.err.println("No connect: Port already linked");
+            return null;
+        }
+        else if (source.canOutput() == target.canOutput() && source.hasDirection() && target.hasDirection()) {
+            System.err.println("No connect: Same port types");
+            return null;
+        }
+
+        Link newLink = new Link();
+        if (!newLink.orient(source, target, path)) {
+            System.err.println("No connect: Ports cannot be linked");
+            return null;
+        }
+
+        source.link = newLink;
+        target.link = newLink;
+        return newLink;
+    }
+
+    /**
+     * Finds loops over a set of newly created links in one pass, using Tarjan's strongly connected
+     * components algorithm over the link graph (iteratively, so large designs can't overflow the stack).
+     * One link is removed from each loop until none remain; the affected modules are flagged with errors.
+     * @param links The links to check, in load order. Removed links are taken out of this list.
+     * @return The links that were removed
+     */
+    public static List<Link> findLoops(List<Link> links) {
+        List<Link> removed = new ArrayList<>();
+
+        Map<Link, Integer> loadOrder = new IdentityHashMap<>();
+        for (int i = 0; i < links.size(); i++) {
+            loadOrder.put(links.get(i), i);
+        }
+
+        while (true) {
+            List<List<Link>> loops = new LinkFinder(links).findLoops();
+            if (loops.isEmpty()) {
+                break;
+            }
+
+            // Break each loop at the most recently loaded link, which is the one createLink would have refused
+            Set<Link> dropped = Collections.newSetFromMap(new IdentityHashMap<Link, Boolean>());
+            for (List<Link> loop : loops) {
+                Link last = loop.get(0);
+                for (Link l : loop) {
+                    Main.sim.flagError(l.targ.owner);
+                    if (loadOrder.getOrDefault(l, -1) > loadOrder.getOrDefault(last, -1)) {
+                        last = l;
+                    }
+                }
+                dropped.add(last);
+            }
+
+            for (Link l : dropped) {
+                l.src.link = null;
+                l.targ.link = null;
+                l.src.setMode(Port.Mode.MODE_BIDIR);
+                l.targ.setMode(Port.Mode.MODE_BIDIR);
+                removed.add(l);
+            }
+            links.removeIf(dropped::contains);
+        }
+
+        return removed;
+    }
+
+    /**
+     * Gets the links directly driven by this one, i.e. the outbound links of every port affected by the target.
+     * Registers & NRAM terminate loops, so have none.
+     */
+    private List<Link> getDriven() {
+        List<Link> driven = new ArrayList<>();
+
+        BaseModule.AvailableModules type = targ.owner.getModType();
+        if (type == BaseModule.AvailableModules.RAM || type == BaseModule.AvailableModules.REGISTER) return driven;
+
+        for (Port p : targ.owner.getAffected(targ)) {
+            if (p.canOutput() && p.link != null) {
+                driven.add(p.link);
+            }
+        }
+
+        return driven;
+    }
+
+    /**
+     * Iterative Tarjan SCC search over the link graph
+     */
+    private static final class LinkFinder {
+        private final Map<Link, Integer> index = new IdentityHashMap<>();
+        private final List<Link> nodes = new ArrayList<>();
+        private final List<Link> roots;
+
+        private int[] order = new int[16];
+        private int[] low = new int[16];
+        private boolean[] onStack = new boolean[16];
+
+        LinkFinder(List<Link> roots) {
+            this.roots = roots;
+        }
+
+        private int indexOf(Link l) {
+            Integer i = index.get(l);
+            if (i == null) {
+                i = nodes.size();
+                index.put(l, i);
+                nodes.add(l);
+
+                if (i >= order.length) {
+                    order = Arrays.copyOf(order, i * 2);
+                    low = Arrays.copyOf(low, i * 2);
+                    onStack = Arrays.copyOf(onStack, i * 2);
+                }
+                order[i] = -1;
+            }
+            return i;
+        }
+
+        /**
+         * @return Each strongly connected component which contains a loop
+         */
+        List<List<Link>> findLoops() {
+            List<List<Link>> loops = new ArrayList<>();
+            Deque<Integer> stack = new ArrayDeque<>();
+            Deque<int[]> callStack = new ArrayDeque<>();
+            List<List<Link>> edges = new ArrayList<>();
+            int counter = 0;
+
+            for (Link root : roots) {
+                int r = indexOf(root);
+                if (order[r] >= 0) continue;
+
+                // Frames hold the node and the position in its edge list
+                callStack.push(new int[] {r, 0});
+                while (!callStack.isEmpty()) {
+                    int[] frame = callStack.peek();
+                    int v = frame[0];
+
+                    if (frame[1] == 0 && order[v] < 0) {
+                        order[v] = low[v] = counter++;
+                        stack.push(v);
+                        onStack[v] = true;
+                        while (edges.size() <= v) edges.add(null);
+                        edges.set(v, nodes.get(v).getDriven());
+                    }
+
+                    List<Link> out = edges.get(v);
+                    if (frame[1] < out.size()) {
+                        int w = indexOf(out.get(frame[1]++));
+                        if (order[w] < 0) {
+                            callStack.push(new int[] {w, 0});
+                        }
+                        else if (onStack[w]) {
+                            low[v] = Math.min(low[v], order[w]);
+                        }
+                        continue;
+                    }
+
+                    // All edges visited - pop the frame and close the component if v is its root
+                    callStack.pop();
+                    if (!callStack.isEmpty()) {
+                        int parent = callStack.peek()[0];
+                        low[parent] = Math.min(low[parent], low[v]);
+                    }
+
+                    if (low[v] == order[v]) {
+                        List<Link> component = new ArrayList<>();
+                        int w;
+                        do {
+                            w = stack.pop();
+                            onStack[w] = false;
+                            component.add(nodes.get(w));
+                        } while (w != v);
+
+                        // Single links only loop if they drive themselves
+                        if (component.size() > 1 || edges.get(v).contains(nodes.get(v))) {
+                            loops.add(component);
+                        }
+                    }
+                }
+            }
+
+            return loops;
+        }
+    }
+
     /**
      * Recursively check for loops in the design
      * @param check Link to check for
@@ -209,15 +443,33 @@ public class Link {
      * @param g Graphics context to draw with
      */
     public void draw(Graphics2D g) {
-        if (highlight) {
-            g.setColor(Colors.selectedLink);
-        }
-        else {
-            g.setColor(Colors.blendedLinks[src.type][targ.type]);
-        }
+        setStyle(g);
+        path.draw(g);
+    }
 
+    /**
+     * Draw the link as straight lines between its control points, for when it is too small on screen for its
+     * curves to be seen
+     * @param g Graphics context to draw with
+     */
+    public void drawSimplified(Graphics2D g) {
+        setStyle(g);
+        path.drawSimplified(g);
+    }
+
+    private void setStyle(Graphics2D g) {
+        g.setColor(getColour());
         g.setStroke(new BasicStroke(2));
-        path.draw(g);
+    }
+
+    /**
+     * Gets the colour the link is drawn in, based on the port types
+     */
+    public Color getColour() {
+        if (highlight) {
+            return Colors.selectedLink;
+        }
+        return Colors.blendedLinks[src.type][targ.type];
     }
 
     /**
@@ -239,16 +491,17 @@ public class Link {
         src.link = null;
         targ.link = null;
 
-        // Propagate change
-        targ.setVal(new BinData());
-        Main.sim.propagate(targ.owner);
+        // Remove from listings - this also resets the target's value
+        Main.sim.removeLink(this);
 
-        // Propagate (non-)directionality if applicable
-        src.setMode(Port.Mode.MODE_BIDIR);
-        targ.setMode(Port.Mode.MODE_BIDIR);
+        Main.sim.submit(() -> {
+            // Propagate change
+            Main.sim.propagate(targ.owner);
 
-        // Remove from listings
-        Main.sim.removeLink(this);
+            // Propagate (non-)directionality if applicable
+            src.setMode(Port.Mode.MODE_BIDIR);
+            targ.setMode(Port.Mode.MODE_BIDIR);
+        });
 
         // Store operation
         Main.opStack.pushOp(new DeleteOperation(this));
@@ -95,10 +95,6 @@ public class Logic extends BaseModule {
         int func = cIn.getVal().getUInt() & 3;
         int result = 0;
 
-        for (int i = 0; i < cLEDs.size(); i++) {
-            cLEDs.get(i).setEnabled(i == func);
-        }
-
         switch (func) {
             case 0:
                 result = ~aVal;
@@ -116,14 +112,21 @@ public class Logic extends BaseModule {
         BinData r = new BinData();
         r.setUInt(result);
 
-        // Set display
-        leds.setVal(r);
-
         // Set outputs
         rOut.setVal(r);
         cOut.setVal(cIn.getVal());
     }
 
+    @Override
+    public void updateDisplay() {
+        int func = cIn.getVal().getUInt() & 3;
+        for (int i = 0; i < cLEDs.size(); i++) {
+            cLEDs.get(i).setEnabled(i == func);
+        }
+
+        leds.setVal(rOut.getVal());
+    }
+
     @Override
     public List<Port> getAffected(Port in) {
         List<Port> outList = super.getAffected(in);
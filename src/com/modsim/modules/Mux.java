@@ -87,13 +87,17 @@ public class Mux extends BaseModule {
         final int sel = contIn.getVal().getUInt() & 3;
 
         dOut.setVal(dIn.get(sel).getVal());
-        dLEDs.setVal(dIn.get(sel).getVal());
+        contOut.setVal(contIn.getVal());
+    }
 
+    @Override
+    public void updateDisplay() {
+        final int sel = contIn.getVal().getUInt() & 3;
+
+        dLEDs.setVal(dIn.get(sel).getVal());
         for (int i = 0; i < 4; i++) {
             cLEDs.get(i).setEnabled(i == sel);
         }
-
-        contOut.setVal(contIn.getVal());
     }
 
     @Override
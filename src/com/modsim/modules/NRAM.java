@@ -2,14 +2,22 @@ package com.modsim.modules;
 
 import com.modsim.gui.MemEdit;
 
-import java.awt.Font;
 import java.awt.Graphics2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.logging.Logger;
 
+import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 import com.modsim.modules.parts.*;
@@ -17,9 +25,10 @@ import com.modsim.modules.ports.Input;
 import com.modsim.modules.ports.Output;
 import com.modsim.res.Colors;
 import com.modsim.res.Colors.LEDColour;
+import com.modsim.res.Fonts;
 import com.modsim.util.BinData;
 import com.modsim.util.HexReader;
-import com.modsim.util.HexWriter;
+import com.modsim.util.MemoryImage;
 
 /**
  * NRAM Module Holds data and instructions for designs
@@ -36,12 +45,20 @@ public class NRAM extends BaseModule {
      */
     public static final int MAX_ADDR = 0xFFFF;
 
-    // The number of BinData locations in the store
-    private static final int LOCATIONS = 0x20000;
+    /**
+     * Size in bytes of a memory image - one byte per BinData location, holding the value in the low nibble and
+     * the mask in the high nibble
+     */
+    public static final int IMAGE_SIZE = 0x20000;
+
     private static final int CLOCK_PIN = 0;
     private static final int WRITE_PIN = 2;
 
-    private final BinData[] store = new BinData[LOCATIONS];
+    // May be adopted from a mapped file, in which case it is direct
+    private ByteBuffer store = ByteBuffer.allocate(IMAGE_SIZE);
+
+    // File the store is mapped read-write from, if any
+    private File backingFile = null;
     private final boolean clearOnReset;
 
     // Port definitions
@@ -127,7 +144,7 @@ public class NRAM extends BaseModule {
 
         // Show label
         g.setColor(Colors.moduleLabel);
-        g.setFont(new Font("SansSerif", Font.BOLD, 40));
+        g.setFont(Fonts.nramLabel);
         g.drawString("NRAM", -58, 15);
 
         drawStaticParts(g);
@@ -137,37 +154,39 @@ public class NRAM extends BaseModule {
     public void propagate() {
         int address = combineAddress(addrA.getVal(), addrB.getVal(), addrC.getVal(), addrD.getVal());
         controlOut.setVal(controlIn.getVal()); // pass-through
-        writeLED.setEnabled(false);
 
         if (controlIn.getVal().getBit(WRITE_PIN) == BinData.HIGH) {
             // Write high, disable output
             dataOutA.setVal(new BinData());
             dataOutB.setVal(new BinData());
-            dataLEDsA.setVal(dataOutA.getVal());
-            dataLEDsB.setVal(dataOutB.getVal());
 
             // Clock high AND jumper on, write to memory.
             if (controlIn.getVal().getBit(CLOCK_PIN) == BinData.HIGH && writeJumper.getEnabled()) {
                 write(address, dataInA.getVal(), dataInB.getVal());
-                writeLED.setEnabled(true);
             }
         } else {
             // Write low, enable output
             BinData[] read = read(address);
             dataOutA.setVal(read[0]);
             dataOutB.setVal(read[1]);
-            dataLEDsA.setVal(read[0]);
-            dataLEDsB.setVal(read[1]);
         }
     }
 
-    public void clear() {
-        final BinData blank = new BinData(BinData.LOW, BinData.LOW, BinData.LOW, BinData.LOW);
+    @Override
+    public void updateDisplay() {
+        BinData control = controlIn.getVal();
+        writeLED.setEnabled(control.getBit(WRITE_PIN) == BinData.HIGH
+                && control.getBit(CLOCK_PIN) == BinData.HIGH && writeJumper.getEnabled());
+
+        dataLEDsA.setVal(dataOutA.getVal());
+        dataLEDsB.setVal(dataOutB.getVal());
+    }
 
-        for (int i = 0; i < LOCATIONS; i++) {
-            // Perhaps we should lazily initialize the data - complicates memory editor.
-            // Alternatively, make BinData immutable?
-            store[i] = new BinData(blank);
+    public void clear() {
+        // All bits low - a full mask with a zero value
+        ByteBuffer s = writableStore();
+        for (int i = 0; i < IMAGE_SIZE; i++) {
+            s.put(i, (byte) 0xF0);
         }
 
         updateEditor(0);
@@ -177,9 +196,47 @@ public class NRAM extends BaseModule {
     public void dataIn(HashMap<String, String> data) {
         super.dataIn(data);
 
-        if (data.containsKey("memory_store")) {
-            String storeStr = data.get("memory_store");
-            HexReader.readString(storeStr, this);
+        boolean backed = false;
+        if (data.containsKey("backing_file")) {
+            String path = data.get("backing_file");
+            try {
+                // A missing file isn't created, as the design may have been moved from where it was
+                attachBackingFile(new File(path), false);
+                backed = true;
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+                        "Unable to open NRAM backing file " + path + " (" + e.getMessage()
+                        + "). The memory contents stored in the design, if any, are used instead."));
+            }
+        }
+
+        // Otherwise the contents are stored in the design
+        if (!backed) {
+            if (data.containsKey("memory_image")) {
+                try {
+                    adoptImage(MemoryImage.decode(data.get("memory_image"), IMAGE_SIZE));
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    SwingUtilities.invokeLater(() ->
+                            JOptionPane.showMessageDialog(null, "Invalid memory image: " + e.getMessage()));
+                }
+            }
+            else if (data.containsKey("memory_store")) {
+                // Legacy hex format
+                String storeStr = data.get("memory_store");
+                try {
+                    // Modules may be loaded off the Swing thread, before they're part of the simulation
+                    HexReader.loadString(storeStr, this);
+                }
+                catch (Exception e) {
+                    e.printStackTrace();
+                    SwingUtilities.invokeLater(() ->
+                            JOptionPane.showMessageDialog(null, "Invalid hex string: " + e.getMessage()));
+                }
+            }
         }
 
         if (data.containsKey("write_jumper")) {
@@ -193,16 +250,53 @@ public class NRAM extends BaseModule {
 
     @Override
     public HashMap<String, String> dataOut() {
-        String storeStr = HexWriter.hexString(this, false);
-        if (storeStr.isEmpty()) return super.dataOut();
+        HashMap<String, String> data = settingsOut();
 
+        // As with the old hex data, the contents are only stored if there are any and they aren't in a file
+        if (backingFile == null && !isBlank()) {
+            data.put("memory_image", MemoryImage.encode(getImage()));
+        }
+        return data;
+    }
+
+    /**
+     * Fills a hash map with the module's data, excluding the memory contents. Used by formats which store the
+     * memory image separately.
+     * @return A filled hash map structure
+     */
+    public HashMap<String, String> settingsOut() {
         HashMap<String, String> data = super.dataOut();
-        data.put("memory_store", storeStr);
         data.put("write_jumper", (writeJumper.getEnabled()) ? "1" : "0");
 
+        if (backingFile != null) {
+            // The contents are saved in the backing file rather than the design
+            data.put("backing_file", backingFile.getPath());
+        }
         return data;
     }
 
+    /**
+     * Writes the store through to its backing file, if it has one. Safe to call from any thread.
+     */
+    public void flushBackingFile() {
+        ByteBuffer s = store;
+        if (backingFile != null && s instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) s).force();
+        }
+    }
+
+    /**
+     * Writes the stores of the file-backed NRAMs among the given modules through to their files. Called when the
+     * design is saved or closed - the operating system writes them back eventually in any case.
+     */
+    public static void flushBackingFiles(List<BaseModule> modules) {
+        for (BaseModule m : modules) {
+            if (m instanceof NRAM) {
+                ((NRAM) m).flushBackingFile();
+            }
+        }
+    }
+
     protected final void reset() {
         // Initialise all values. Use 0 for simplistic view, or random to reflect
         // the undefined state of memory when first powered up.
@@ -211,9 +305,9 @@ public class NRAM extends BaseModule {
         } else {
             Random rng = new Random();
 
-            for (int i = 0; i < LOCATIONS; i++) {
-                store[i] = new BinData();
-                store[i].setUInt(rng.nextInt());
+            ByteBuffer s = writableStore();
+            for (int i = 0; i < IMAGE_SIZE; i++) {
+                s.put(i, pack(new BinData(rng.nextInt())));
             }
         }
     }
@@ -238,8 +332,9 @@ public class NRAM extends BaseModule {
         if (address <= MAX_ADDR) {
             address = address << 1;
 
-            store[address] = d0;
-            store[address | 1] = d1;
+            ByteBuffer s = writableStore();
+            s.put(address, pack(d0));
+            s.put(address | 1, pack(d1));
 
             updateEditor(address);
         } else {
@@ -251,13 +346,180 @@ public class NRAM extends BaseModule {
         if (address <= MAX_ADDR) {
             address = address << 1;
 
-            return new BinData[]{store[address], store[address | 1]};
+            return new BinData[]{unpack(store.get(address)), unpack(store.get(address | 1))};
         } else {
             Logger.getLogger(NRAM.class.getName()).warning("NRAM tile index out of bounds.");
             return new BinData[]{new BinData(), new BinData()};
         }
     }
 
+    /**
+     * Reads a whole byte, bypassing the BinData conversion
+     * @return The byte at the address - data B in the high nibble, data A in the low nibble
+     */
+    public int getByte(int address) {
+        address = address << 1;
+        return ((store.get(address | 1) & 0xF) << 4) | (store.get(address) & 0xF);
+    }
+
+    /**
+     * Stores a whole byte, bypassing the BinData conversion. Used for bulk loads, so any attached editor is not
+     * notified - the caller should update it once the load is finished.
+     * @param value Data B in the high nibble, data A in the low nibble
+     */
+    public void setByte(int address, int value) {
+        address = address << 1;
+        ByteBuffer s = writableStore();
+        s.put(address, (byte) (0xF0 | (value & 0xF)));
+        s.put(address | 1, (byte) (0xF0 | ((value >> 4) & 0xF)));
+    }
+
+    /**
+     * Stores a block of whole bytes, bypassing the BinData conversion. As with setByte, any attached editor is not
+     * notified.
+     * @param address Address of the first byte
+     * @param src Bytes to store, from its position to its limit. Bytes past the end of memory are not stored.
+     * @return The number of bytes stored
+     */
+    public int putBytes(int address, ByteBuffer src) {
+        int count = Math.max(0, Math.min(src.remaining(), MAX_ADDR + 1 - address));
+        int pos = src.position();
+        for (int i = 0; i < count; i++) {
+            setByte(address + i, src.get(pos + i));
+        }
+        src.position(pos + count);
+        return count;
+    }
+
+    private static byte pack(BinData d) {
+        return (byte) ((d.val & 0xF) | (d.mask << 4));
+    }
+
+    private static BinData unpack(byte b) {
+        return new BinData((byte) (b & 0xF), (byte) ((b >> 4) & 0xF));
+    }
+
+    /**
+     * @return True if every location reads as zero, in which case the contents needn't be stored
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < IMAGE_SIZE; i++) {
+            if ((store.get(i) & 0xF) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return A read-only view of the raw memory image
+     * @see #IMAGE_SIZE
+     */
+    public ByteBuffer getImage() {
+        ByteBuffer image = store.asReadOnlyBuffer();
+        image.clear();
+        return image;
+    }
+
+    /**
+     * Takes over a raw memory image as the module's store, without copying it. The buffer may be mapped read-only
+     * from a design file, in which case it's copied onto the heap when first written, leaving the file as it is.
+     * @param image Buffer of IMAGE_SIZE bytes
+     */
+    public void adoptImage(ByteBuffer image) {
+        if (image.capacity() != IMAGE_SIZE) {
+            throw new IllegalArgumentException("NRAM image must be " + IMAGE_SIZE + " bytes");
+        }
+        if (backingFile != null) {
+            // Keep the backing file, taking on the image's contents
+            ByteBuffer src = image.duplicate();
+            src.clear();
+            for (int i = 0; i < IMAGE_SIZE; i++) {
+                store.put(i, src.get(i));
+            }
+        }
+        else {
+            store = image;
+        }
+        updateEditor(0);
+    }
+
+    /**
+     * @return The store, ready to be written. An image mapped read-only from a design file is copied first.
+     */
+    private ByteBuffer writableStore() {
+        if (store.isReadOnly()) {
+            detachImage();
+        }
+        return store;
+    }
+
+    /**
+     * Copies an adopted image onto the heap, releasing any file it was mapped from
+     */
+    public void detachImage() {
+        if (store.isDirect() && backingFile == null) {
+            ByteBuffer heap = ByteBuffer.allocate(IMAGE_SIZE);
+            heap.put(getImage());
+            store = heap;
+        }
+    }
+
+    /**
+     * @return The file backing the store, or null if the store is held in memory
+     */
+    public File getBackingFile() {
+        return backingFile;
+    }
+
+    /**
+     * Backs the store with a file. Writes go straight to the file's mapping, so the contents survive restarts
+     * without being saved in the design, and don't occupy the Java heap. An existing image file is loaded into
+     * memory; otherwise a new one is created holding the current contents. NRAMs given the same file share
+     * their memory.
+     * @param file Image file of IMAGE_SIZE bytes, or a file to create
+     * @param create Whether to create the file if it doesn't exist - false when loading a design
+     * @throws IOException If the file can't be mapped or isn't an NRAM image
+     */
+    public void attachBackingFile(File file, boolean create) throws IOException {
+        file = file.getAbsoluteFile();
+
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (create) {
+            options.add(StandardOpenOption.CREATE);
+        }
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), options)) {
+            long size = ch.size();
+            if (size != 0 && size != IMAGE_SIZE) {
+                throw new IOException(file.getName() + " is not an NRAM image (" + IMAGE_SIZE + " bytes)");
+            }
+
+            MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_WRITE, 0, IMAGE_SIZE);
+            if (size == 0) {
+                mapped.put(getImage());
+                mapped.clear();
+                mapped.force();
+            }
+
+            store = mapped;
+            backingFile = file;
+        }
+
+        updateEditor(0);
+    }
+
+    /**
+     * Stops backing the store with a file, keeping the current contents in memory. The file is left as it is.
+     */
+    public void detachBackingFile() {
+        if (backingFile != null) {
+            ((MappedByteBuffer) store).force();
+            backingFile = null;
+            detachImage();
+        }
+    }
+
     /**
      * Attaches an editor to the module
      * @param e Editor to attach
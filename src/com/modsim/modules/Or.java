@@ -77,7 +77,6 @@ public class Or extends BaseModule {
     public void propagate() {
         BinData res = new BinData();
         res.setBit(0, BinData.LOW);
-        rLED.setEnabled(false);
 
         for (int i = 0; i < passOut.size(); i++) {
             passOut.get(i).setVal(dIn.get(i).getVal());
@@ -85,18 +84,21 @@ public class Or extends BaseModule {
             byte v = passOut.get(i).getVal().getBit(0);
             if (v == BinData.HIGH) {
                 res.setBit(0, BinData.HIGH);
-                rLED.setEnabled(true);
             }
         }
 
         if (chIn.getVal().getBit(0) == BinData.HIGH) {
             res.setBit(0, BinData.HIGH);
-            rLED.setEnabled(true);
         }
 
         rOut.setVal(res);
     }
 
+    @Override
+    public void updateDisplay() {
+        rLED.setEnabled(rOut.getVal().getBit(0) == BinData.HIGH);
+    }
+
     @Override
     public AvailableModules getModType() {
         return AvailableModules.OR;
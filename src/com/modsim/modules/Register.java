@@ -87,14 +87,16 @@ public class Register extends BaseModule {
             myData = dataIn.getVal();
         }
 
-        // Show it
-        ledRow.setVal(myData);
-
         // Set the outputs
         dataOut.setVal(myData);
         controlOut.setVal(controlVal);
     }
 
+    @Override
+    public void updateDisplay() {
+        ledRow.setVal(myData);
+    }
+
     public void setStoredVal(BinData val) {
         myData.set(val);
     }
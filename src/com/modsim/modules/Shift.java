@@ -1,6 +1,5 @@
 package com.modsim.modules;
 
-import java.awt.Font;
 import java.awt.Graphics2D;
 import java.util.List;
 
@@ -10,6 +9,7 @@ import com.modsim.modules.parts.LEDRow;
 import com.modsim.modules.ports.Output;
 import com.modsim.modules.parts.Port;
 import com.modsim.res.Colors;
+import com.modsim.res.Fonts;
 import com.modsim.util.BinData;
 
 public class Shift extends BaseModule {
@@ -49,9 +49,7 @@ public class Shift extends BaseModule {
         shiftLEDs[0] = new LED(50, 10);
         shiftLEDs[1] = new LED(50, 0);
 
-        // Set initial LED state according to pull.
         for (int i = 0; i < shiftLEDs.length; i++) {
-            shiftLEDs[i].setEnabled(controlIn.getVal().getBit(i) == BinData.HIGH);
             addPart(shiftLEDs[i]);
         }
 
@@ -76,7 +74,7 @@ public class Shift extends BaseModule {
 
         // Show label
         g.setColor(Colors.moduleLabel);
-        g.setFont(new Font("SansSerif", Font.BOLD, 20));
+        g.setFont(Fonts.shiftLabel);
         g.drawString(isLeftShift ? "LSH" : "RSH", -20, 8);
 
         drawStaticParts(g);
@@ -122,12 +120,15 @@ public class Shift extends BaseModule {
                 }
         }
 
+        this.chainOut.setVal(new BinData(chainOut));
+        controlOut.setVal(controlIn.getVal());
+    }
+
+    @Override
+    public void updateDisplay() {
         shiftLEDs[0].setEnabled(controlIn.getVal().getBit(0) == BinData.HIGH);
         shiftLEDs[1].setEnabled(controlIn.getVal().getBit(1) == BinData.HIGH);
         dataLEDs.setVal(dataOut.getVal());
-
-        this.chainOut.setVal(new BinData(chainOut));
-        controlOut.setVal(controlIn.getVal());
     }
 
     private int iSided(int which) {
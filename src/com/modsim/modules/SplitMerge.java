@@ -9,6 +9,7 @@ import java.util.Collections;
 import java.util.List;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import com.modsim.modules.parts.VisiblePart;
 import com.modsim.modules.ports.BidirPort;
@@ -207,12 +208,16 @@ public class SplitMerge extends BaseModule {
         if (portA0.wasUpdated() || portA1.wasUpdated()) {
         	if(portA0.isConnected() && portA1.isConnected())
         	{
-        		JOptionPane.showMessageDialog(Main.ui.pane, "Error: There must only be one connection to that side of a split/merge.");
+        		// The new link is deleted on the Swing thread, once propagation is done, so it can be undone
         		Port port = portA0.wasUpdated()?portA0:portA1;
-        		synchronized (Main.sim)
-				{
-	        		Main.sim.removeLink(port.link);	        		
-        		}
+        		Link link = port.link;
+        		SwingUtilities.invokeLater(() -> {
+        			if (link != null && port.link == link) {
+        				link.delete();
+        			}
+        			JOptionPane.showMessageDialog(Main.ui.pane,
+        					"Error: There must only be one connection to that side of a split/merge.");
+        		});
         		return;
         	}
             b0_val.setBit(0, a0_val.getBit(0)); // A0-a0
@@ -254,6 +259,12 @@ public class SplitMerge extends BaseModule {
         portB3.setVal(b3_val);
     }
 
+    @Override
+    public void updateDisplay() {
+        // The port values are shown on the module
+        displayChanged = true;
+    }
+
     @Override
     public List<Port> getAffected(Port in) {
         List<Port> outPorts = new ArrayList<>();
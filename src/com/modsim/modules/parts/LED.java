@@ -11,8 +11,10 @@ public class LED extends TogglePart {
 	private Color color;
 	private Color hColor;
 
-	private int povTicks = 0;
-	private int povHits = 0;
+	// Persistence of vision - set if the LED was lit at the end of a simulation step since it was last drawn
+	private volatile boolean povLit = false;
+	// Step the LED was last lit in
+	private int litStep = 0;
 
     // Convenience method, single LEDs are most commonly control.
     public LED(int x, int y) {
@@ -27,13 +29,56 @@ public class LED extends TogglePart {
         hColor = col.highlight;
 	}
 
+	@Override
+	public void setEnabled(boolean en) {
+		boolean wasEnabled = getEnabled();
+		super.setEnabled(en);
+		povUpdate(wasEnabled);
+	}
+
+	@Override
+	public void toggleEnabled() {
+		boolean wasEnabled = getEnabled();
+		super.toggleEnabled();
+		povUpdate(wasEnabled);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		povLit = false;
+	}
+
+	/**
+	 * Latches the persistence-of-vision flag when the LED goes out after staying lit through the end of a step
+	 */
+	private void povUpdate(boolean wasEnabled) {
+		boolean en = getEnabled();
+		if (en == wasEnabled) {
+			return;
+		}
+
+		int step = currentStep();
+		if (en) {
+			litStep = step;
+		}
+		else if (step != litStep) {
+			povLit = true;
+		}
+	}
+
 	@Override
 	public void paint(Graphics2D g) {
 		// Display the LED
 		g.setColor(Colors.ledBack);
 		g.fillRect(x-4, y-4, 8, 8);
 
-		if (getEnabled() || povHits > 0) {
+		// Lit only by persistence of vision - needs redrawing once that has passed
+		if (!getEnabled() && povLit) {
+			changed();
+		}
+
+		if (getEnabled() || povLit) {
 			g.setColor(color);
             g.fillRect(x-4, y-4, 8, 8);
 			g.setColor(hColor);
@@ -44,15 +89,6 @@ public class LED extends TogglePart {
 			g.fillRect(x-2, y-2, 4, 4);
 		}
 
-		povTicks = 0;
-        povHits = 0;
-	}
-
-	@Override
-	public void povTick() {
-		povTicks++;
-		if (getEnabled()) {
-			povHits++;
-		}
+		povLit = false;
 	}
 }
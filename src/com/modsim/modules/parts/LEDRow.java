@@ -21,8 +21,10 @@ public class LEDRow extends VisiblePart {
 
 	private volatile BinData curVal = new BinData(0);
 
-	private int povTicks = 0;
-	private int povHits[] = new int[NLEDS];
+	// Persistence of vision - LEDs lit at the end of a simulation step since the row was last drawn
+	private volatile int povBits = 0;
+	// Step the current value was set in
+	private int valStep = 0;
 
     // Convenience method, LEDRow is usually data.
     public LEDRow(int x, int y) {
@@ -42,7 +44,17 @@ public class LEDRow extends VisiblePart {
 	 * @param v
 	 */
 	public void setVal(BinData v) {
-		curVal.set(v);
+		if (!curVal.equals(v)) {
+			// The old value lasted through the end of a step, so its LEDs were seen
+			int step = currentStep();
+			if (step != valStep) {
+				povBits |= litBits(curVal);
+			}
+			valStep = step;
+
+			curVal.set(v);
+			changed();
+		}
 	}
 
 	/**
@@ -63,7 +75,14 @@ public class LEDRow extends VisiblePart {
 		for (int i = 0; i < NLEDS; i++) {
 			int offs = x+(1-i)*8;
 
-			if (v.getBit(i) == 1 || povHits[i] > 0) {
+			boolean povLit = (povBits & (1 << i)) != 0;
+
+			// Lit only by persistence of vision - needs redrawing once that has passed
+			if (v.getBit(i) != 1 && povLit) {
+				changed();
+			}
+
+			if (v.getBit(i) == 1 || povLit) {
 				g.setColor(color);
 				g.fillRect(offs+1, y-3, 6, 6);
 				g.setColor(hColor);
@@ -75,25 +94,20 @@ public class LEDRow extends VisiblePart {
 			}
 		}
 
-		resetPov();
+		povBits = 0;
 	}
 
-	@Override
-	public void povTick() {
-		povTicks++;
-		BinData v = getVal();
+	/**
+	 * Gets a mask of the LEDs a value lights
+	 */
+	private static int litBits(BinData v) {
+		int bits = 0;
 		for (int i = 0; i < NLEDS; i++) {
 			if (v.getBit(i) == 1) {
-				povHits[i]++;
+				bits |= 1 << i;
 			}
 		}
-	}
-
-	private void resetPov() {
-		povTicks = 0;
-		for (int i = 0; i < NLEDS; i++) {
-			povHits[i] = 0;
-		}
+		return bits;
 	}
 
     @Override
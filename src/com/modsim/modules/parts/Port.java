@@ -22,7 +22,8 @@ public abstract class Port {
 		}
 	}
 
-    public int ID;
+    // Assigned by the simulation along with its module's ID
+    public int ID = -1;
 	public BaseModule owner;
 
 	public Link link;
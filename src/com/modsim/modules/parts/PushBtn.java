@@ -45,9 +45,11 @@ public class PushBtn extends TogglePart {
 	public boolean lbDown(int xPt, int yPt, boolean isShiftDown) {
 		if (xPt > x-w/2 && xPt < x+w/2 && yPt > y-h/2 && yPt < y+h/2) {
 			// Clicked
-			setEnabled(true);
 			clicking = true;
-			Main.sim.propagate(owner);
+			Main.sim.submit(() -> {
+				setEnabled(true);
+				Main.sim.propagate(owner);
+			});
 			return true;
 		}
 
@@ -58,8 +60,10 @@ public class PushBtn extends TogglePart {
 	public boolean lbUp(int xPt, int yPt) {
 	    if (clicking) {
 	        clicking = false;
-	        setEnabled(false);
-	        Main.sim.propagate(owner);
+	        Main.sim.submit(() -> {
+	            setEnabled(false);
+	            Main.sim.propagate(owner);
+	        });
             return true;
 	    }
 
@@ -87,9 +91,4 @@ public class PushBtn extends TogglePart {
             g.fillRect(x-w/2 + 1, y-h/2+1, w - 2, h-3);
 		}
 	}
-
-	@Override
-	public void povTick() {
-		// Don't care
-	}
 }
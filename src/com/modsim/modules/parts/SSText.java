@@ -95,11 +95,6 @@ public class SSText extends VisiblePart {
         g.drawString(text, x, y);
     }
 
-    @Override
-    public void povTick() {
-        // Don't care
-    }
-
     @Override
     public RefreshMode getRefreshMode() {
         return refreshMode;
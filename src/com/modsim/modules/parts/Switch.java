@@ -39,8 +39,10 @@ public class Switch extends TogglePart {
 	public boolean lbDown(int xPt, int yPt, boolean isShiftDown) {
 		if (xPt > x-w/2 && xPt < x+w/2 && yPt > y-h/2 && yPt < y+h/2) {
 			// Clicked
-			toggleEnabled();
-			Main.sim.propagate(owner);
+			Main.sim.submit(() -> {
+				toggleEnabled();
+				Main.sim.propagate(owner);
+			});
 			return true;
 		}
 
@@ -67,9 +69,4 @@ public class Switch extends TogglePart {
             g.fillRect(x-w/2 + 1, y-1, w - 2, 12);
 		}
 	}
-
-	@Override
-	public void povTick() {
-		// Don't care
-	}
 }
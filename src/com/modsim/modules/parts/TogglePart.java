@@ -5,11 +5,15 @@ public abstract class TogglePart extends VisiblePart {
 	private volatile boolean enabled = false;
 
 	public void setEnabled(boolean en) {
-		enabled = en;
+		if (en != enabled) {
+			enabled = en;
+			changed();
+		}
 	}
 
 	public void toggleEnabled() {
 		enabled = !enabled;
+		changed();
 	}
 
 	public boolean getEnabled() {
@@ -17,7 +21,7 @@ public abstract class TogglePart extends VisiblePart {
 	}
 
 	public void reset() {
-	    enabled = false;
+	    setEnabled(false);
 	}
 
 	@Override
@@ -1,6 +1,8 @@
 package com.modsim.modules.parts;
 
 import java.awt.Graphics2D;
+
+import com.modsim.Main;
 import com.modsim.modules.BaseModule;
 
 /**
@@ -27,8 +29,20 @@ public abstract class VisiblePart {
 	public abstract void paint(Graphics2D g);
 	public abstract RefreshMode getRefreshMode();
 
-	/***
-	 * Use to update the part's persistence-of-vision data
+	/**
+	 * Gets the simulation step in progress, used for persistence of vision. Module prototypes are created before
+	 * the simulation exists, when this is 0.
 	 */
-	public abstract void povTick();
+	protected static int currentStep() {
+		return Main.sim == null ? 0 : Main.sim.iterations;
+	}
+
+	/**
+	 * Flags that the part's appearance has changed, so its module is redrawn
+	 */
+	protected void changed() {
+		if (owner != null) {
+			owner.displayChanged = true;
+		}
+	}
 }
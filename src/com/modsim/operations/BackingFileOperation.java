@@ -0,0 +1,109 @@
+package com.modsim.operations;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.Main;
+import com.modsim.modules.NRAM;
+import com.modsim.util.DesignJournal;
+
+/**
+ * Undo/redo for backing an NRAM with a file, or returning its contents to the design. The store is swapped as a
+ * simulation command, as the simulation may be reading or writing it.
+ */
+public class BackingFileOperation extends BaseOperation {
+
+    private final NRAM ram;
+    private final File newFile;
+
+    // The state replaced, including the contents held in memory if there was no backing file
+    private File oldFile = null;
+    private ByteBuffer oldImage = null;
+
+    /**
+     * @param ram Memory to change
+     * @param file File to back it with, or null to return its contents to the design
+     */
+    public BackingFileOperation(NRAM ram, File file) {
+        this.ram = ram;
+        newFile = file;
+    }
+
+    /**
+     * Makes the change for the first time, recording the state it replaces
+     * @return True if the change was made, in which case the operation can be pushed
+     */
+    public boolean apply() {
+        return run(() -> {
+            oldFile = ram.getBackingFile();
+            if (oldFile == null) {
+                oldImage = ByteBuffer.allocate(NRAM.IMAGE_SIZE);
+                oldImage.put(ram.getImage());
+            }
+            use(newFile, null);
+            return null;
+        });
+    }
+
+    @Override
+    public void undo() {
+        run(() -> {
+            use(oldFile, oldImage);
+            return null;
+        });
+    }
+
+    @Override
+    public void redo() {
+        run(() -> {
+            use(newFile, null);
+            return null;
+        });
+    }
+
+    @Override
+    void record(DesignJournal journal, boolean forward) {
+        journal.dataChanged(ram);
+    }
+
+    /**
+     * Backs the memory with the file (or with nothing), then restores the image given, if any. Applied by the
+     * simulation's owner.
+     */
+    private void use(File file, ByteBuffer image) throws Exception {
+        if (file == null) {
+            ram.detachBackingFile();
+        }
+        else {
+            ram.attachBackingFile(file, true);
+        }
+
+        if (image != null) {
+            // Copied, so the operation can be undone again after the memory has been written
+            ByteBuffer copy = ByteBuffer.allocate(NRAM.IMAGE_SIZE);
+            image.clear();
+            copy.put(image);
+            ram.adoptImage(copy);
+        }
+        Main.sim.propagate(ram);
+    }
+
+    /**
+     * Runs the command on the simulation, reporting any failure
+     * @return True if the command succeeded
+     */
+    private boolean run(Callable<Void> command) {
+        try {
+            Main.sim.submitAndWait(command);
+            return true;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(Main.ui.frame, "Unable to use backing file: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.modsim.operations;
 
 import com.modsim.modules.Link;
 import com.modsim.simulator.PickableEntity;
+import com.modsim.util.DesignJournal;
 
 /**
  * Created by Ali on 16/08/2015.
@@ -12,4 +13,13 @@ public abstract class BaseOperation {
 
     public abstract void undo();
     public abstract void redo();
+
+    /**
+     * Records the objects affected by the operation in the journal
+     * @param forward True if the operation has been done or redone, false if it has been undone
+     */
+    void record(DesignJournal journal, boolean forward) {
+        if (entity != null) journal.changed(entity);
+        if (link != null) journal.changed(link);
+    }
 }
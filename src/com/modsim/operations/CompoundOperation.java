@@ -3,6 +3,8 @@ package com.modsim.operations;
 import java.util.ArrayList;
 import java.util.ListIterator;
 
+import com.modsim.util.DesignJournal;
+
 /**
  * Created by Ali on 17/08/2015.
  */
@@ -41,4 +43,21 @@ public class CompoundOperation extends BaseOperation {
             }
         }
     }
+
+    @Override
+    void record(DesignJournal journal, boolean forward) {
+        synchronized (this) {
+            if (forward) {
+                for (BaseOperation op : ops) {
+                    op.record(journal, true);
+                }
+            }
+            else {
+                ListIterator<BaseOperation> li = ops.listIterator(ops.size());
+                while (li.hasPrevious()) {
+                    li.previous().record(journal, false);
+                }
+            }
+        }
+    }
 }
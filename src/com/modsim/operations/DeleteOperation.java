@@ -5,6 +5,7 @@ import com.modsim.modules.parts.Port;
 import com.modsim.Main;
 import com.modsim.simulator.PickableEntity;
 import com.modsim.util.CtrlPt;
+import com.modsim.util.DesignJournal;
 
 /**
  * Created by Ali on 17/08/2015.
@@ -44,10 +45,12 @@ public class DeleteOperation extends BaseOperation {
             Main.sim.addLink(link);
 
             // Propagate change
-            link.src.setMode(Port.Mode.MODE_OUTPUT);
-            link.targ.setMode(Port.Mode.MODE_INPUT);
-            link.targ.setVal(link.src.getVal());
-            Main.sim.propagate(link.targ.owner);
+            Main.sim.submit(() -> {
+                link.src.setMode(Port.Mode.MODE_OUTPUT);
+                link.targ.setMode(Port.Mode.MODE_INPUT);
+                link.targ.setVal(link.src.getVal());
+                Main.sim.propagate(link.targ.owner);
+            });
         }
     }
 
@@ -65,4 +68,14 @@ public class DeleteOperation extends BaseOperation {
             link.delete();
         }
     }
+
+    @Override
+    void record(DesignJournal journal, boolean forward) {
+        Object o = entity != null ? entity : link;
+        if (o == null) return;
+
+        // Control points are changes to their link, which the journal resolves
+        if (forward) journal.removed(o);
+        else journal.added(o);
+    }
 }
@@ -1,6 +1,7 @@
 package com.modsim.operations;
 
 import com.modsim.modules.BaseModule;
+import com.modsim.util.DesignJournal;
 
 /**
  * Created by awick on 21/09/2015.
@@ -28,4 +29,9 @@ public class LabelOperation extends BaseOperation {
         targetModule.label = newStr;
     }
 
+    @Override
+    void record(DesignJournal journal, boolean forward) {
+        journal.changed(targetModule);
+    }
+
 }
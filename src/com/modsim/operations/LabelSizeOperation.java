@@ -1,6 +1,7 @@
 package com.modsim.operations;
 
 import com.modsim.modules.BaseModule;
+import com.modsim.util.DesignJournal;
 
 /**
  * Created by Ali on 24/09/2015.
@@ -28,4 +29,9 @@ public class LabelSizeOperation extends BaseOperation {
         module.labelSize = newSize;
     }
 
+    @Override
+    void record(DesignJournal journal, boolean forward) {
+        journal.changed(module);
+    }
+
 }
@@ -18,14 +18,14 @@ public class MoveOperation extends BaseOperation {
     public void undo() {
         Vec2 pos = new Vec2(entity.pos);
         pos.sub(delta);
-        entity.pos.set(pos);
+        entity.move(pos);
     }
 
     @Override
     public void redo() {
         Vec2 pos = new Vec2(entity.pos);
         pos.add(delta);
-        entity.pos.set(pos);
+        entity.move(pos);
     }
 
 }
@@ -1,5 +1,7 @@
 package com.modsim.operations;
 
+import com.modsim.util.DesignJournal;
+
 /**
  * Created by Ali on 17/08/2015.
  *
@@ -17,12 +19,76 @@ public class OperationStack {
 
     private boolean modified = false;
 
+    private DesignJournal journal = null;
+
+    // Counts changes to the design, so a save can tell whether it is still current when it completes
+    private int editCount = 0;
+
     public boolean isModified() {
         return modified;
     }
 
+    /**
+     * Marks the document as saved (or freshly loaded), restarting the journal from its file
+     */
     public void resetModified() {
         modified = false;
+        if (journal != null) journal.restart(false);
+    }
+
+    /**
+     * @return A count that changes whenever the design is edited or replaced
+     */
+    public int getEditCount() {
+        return editCount;
+    }
+
+    /**
+     * Called when a save completes. The document is only marked as saved if it hasn't changed since it was
+     * captured for saving.
+     * @param edits The edit count when the design was captured
+     */
+    public void saved(int edits) {
+        if (edits == editCount) {
+            resetModified();
+        }
+        else if (journal != null) {
+            // The journal's base may be the file that has just been replaced
+            journal.restart(true);
+        }
+    }
+
+    /**
+     * Marks the document as differing from its file, e.g. after it has been recovered
+     */
+    public void markModified() {
+        modified = true;
+    }
+
+    /**
+     * Sets the journal that completed operations are recorded in, starting it from the current design
+     */
+    public void setJournal(DesignJournal j) {
+        journal = j;
+        if (journal != null) journal.restart(modified);
+    }
+
+    /**
+     * Closes the journal, discarding its contents. Called on exit, once the user has had the chance to save.
+     */
+    public void closeJournal() {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void record(BaseOperation op, boolean forward) {
+        editCount++;
+        if (journal != null) {
+            op.record(journal, forward);
+            journal.commit();
+        }
     }
 
     /**
@@ -62,6 +128,8 @@ public class OperationStack {
             stack[head].undo();
             suppressOperations = false;
 
+            record(stack[head], false);
+
             // don't decrease size as we're still storing the future redo queue
         }
     }
@@ -83,6 +151,8 @@ public class OperationStack {
             stack[head].redo();
             suppressOperations = false;
 
+            record(stack[head], true);
+
             head = (head+1) % (MAX_HISTORY + 1);
         }
     }
@@ -125,6 +195,8 @@ public class OperationStack {
 
             // Mark as modified
             modified = true;
+
+            record(op, true);
         }
     }
 
@@ -141,6 +213,9 @@ public class OperationStack {
 
         head = futureHead = tail = size = 0;
         modified = false;
+        editCount++;
+
+        if (journal != null) journal.restart(false);
     }
 
     /**
@@ -6,8 +6,8 @@ import com.modsim.gui.view.ViewUtil;
 import com.modsim.modules.BaseModule;
 import com.modsim.simulator.PickableEntity;
 import com.modsim.tools.PlaceTool;
-import com.modsim.util.XMLReader;
-import com.modsim.util.XMLWriter;
+import com.modsim.util.DesignLoader;
+import com.modsim.util.DesignSaver;
 
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -30,13 +30,20 @@ public class Ops {
         private static final FilenameFilter simFileFilter = new FilenameFilter() {
             @Override
             public boolean accept(File dir, String name) {
-                return name.endsWith(".modsim");
+                return isSimFile(name);
             }
         };
 
+        /**
+         * @return True if the name has one of the design file extensions (.modsim for XML, .modsimb for binary)
+         */
+        private static boolean isSimFile(String name) {
+            return name.endsWith(".modsim") || name.endsWith(".modsimb");
+        }
+
         /**
          * Offers to save the current document with a save dialog.
-         * @return True if document was saved
+         * @return True if the document is being saved
          */
         public static boolean saveAs() {
             Preferences prefs = Preferences.userNodeForPackage(FileIO.class);
@@ -58,12 +65,11 @@ public class Ops {
                 String path = fd.getDirectory() + fd.getFile();
 
                 // Is the file being created with the correct extension?
-                if (!path.endsWith(".modsim")) {
+                if (!isSimFile(path)) {
                     path = path + ".modsim";
                 }
 
-                XMLWriter.writeFile(new File(path));
-                Main.opStack.resetModified();
+                DesignSaver.save(new File(path));
                 return true;
             }
 
@@ -72,7 +78,7 @@ public class Ops {
 
         /**
          * Saves the current file (calls saveAs() if the document has not yet been saved to the filesystem)
-         * @return True if the document was saved
+         * @return True if the document is being saved
          */
         public static boolean save() {
             String curPath = Main.sim.filePath;
@@ -80,15 +86,14 @@ public class Ops {
             if (curPath.isEmpty()) {
                 return saveAs();
             } else {
-                XMLWriter.writeFile(new File(curPath));
-                Main.opStack.resetModified();
+                DesignSaver.save(new File(curPath));
                 return true;
             }
         }
 
         /**
          * Design-file opening
-         * @return True if a .modsim file was loaded
+         * @return True if a .modsim or .modsimb file is being loaded
          */
         public static boolean open() {
             if (!Main.ui.checkSave()) return false;
@@ -106,7 +111,7 @@ public class Ops {
                 String path = fd.getDirectory() + fd.getFile();
 
                 // Loop till we get a valid input
-                while (!path.endsWith(".modsim")) {
+                while (!isSimFile(path)) {
                     JOptionPane.showMessageDialog(null, "That doesn't appear to be a ModuleSim file.");
                     fd.setFile("*.modsim");
                     fd.setVisible(true);
@@ -115,9 +120,10 @@ public class Ops {
                     path = fd.getDirectory() + fd.getFile();
                 }
 
+                // Loads in the background - the current design is replaced once the new one is ready
                 File file = new File(path);
-                XMLReader.readFile(file);
                 prefs.put("sim_fileDir", fd.getDirectory());
+                DesignLoader.open(file);
                 return true;
             }
 
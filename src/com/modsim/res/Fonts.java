@@ -11,5 +11,7 @@ public class Fonts {
     public static final Font splitMergeLabel = new Font("Monospaced", Font.BOLD, 20);
     public static final Font label = new Font("Dialog", Font.PLAIN, 18);
     public static final Font bigLabel = new Font("Dialog", Font.PLAIN, 36);
+    public static final Font nramLabel = new Font("SansSerif", Font.BOLD, 40);
+    public static final Font shiftLabel = new Font("SansSerif", Font.BOLD, 20);
 
 }
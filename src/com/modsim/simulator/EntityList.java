@@ -0,0 +1,252 @@
+package com.modsim.simulator;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * Insertion-ordered list of distinct objects, with constant-time lookup and removal. Removal leaves a hole, which
+ * iteration skips over; holes are closed up the next time the list is accessed by index, or once they outnumber
+ * the elements. Order is kept because it is the drawing order, and the order designs are saved in.
+ *
+ * Snapshots share the list's array. Elements appended afterwards go beyond the end a snapshot can see, so only
+ * removal has to copy the array, and then only once per snapshot.
+ */
+final class EntityList<T> extends AbstractList<T> {
+
+    private Object[] items = new Object[16];
+    private int end = 0;
+    private int holes = 0;
+
+    // Whether a snapshot refers to items, which must then be copied before an element is removed from it
+    private boolean shared = false;
+
+    // Each element's position in items
+    private final IdentityHashMap<Object, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * Appends the element, unless it is already present
+     * @return True if the element was added
+     */
+    @Override
+    public boolean add(T t) {
+        if (positions.containsKey(t)) {
+            return false;
+        }
+
+        if (end == items.length) {
+            if (holes > 0) {
+                compact();
+            }
+            if (end == items.length) {
+                Object[] grown = new Object[items.length * 2];
+                System.arraycopy(items, 0, grown, 0, end);
+                items = grown;
+            }
+        }
+
+        positions.put(t, end);
+        items[end++] = t;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!unlink(o)) {
+            return false;
+        }
+
+        if (holes > end - holes) {
+            compact();
+        }
+        return true;
+    }
+
+    private boolean unlink(Object o) {
+        Integer pos = positions.remove(o);
+        if (pos == null) {
+            return false;
+        }
+
+        if (shared) {
+            items = items.clone();
+            shared = false;
+        }
+        items[pos] = null;
+        holes++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return positions.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!positions.containsKey(o)) {
+            return -1;
+        }
+        compact();
+        return positions.get(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        compact();
+        if (index < 0 || index >= end) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + end);
+        }
+        return (T) items[index];
+    }
+
+    @Override
+    public int size() {
+        return end - holes;
+    }
+
+    @Override
+    public void clear() {
+        items = new Object[16];
+        end = holes = 0;
+        shared = false;
+        positions.clear();
+        modCount++;
+    }
+
+    /**
+     * Takes an immutable copy of the list, which is unaffected by later changes
+     */
+    List<T> snapshot() {
+        compact();
+        shared = true;
+        return new Snapshot<>(items, end);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            // Compaction replaces the array, so indexed access during iteration doesn't disturb it
+            private final Object[] array = items;
+            private final int arrayEnd = end;
+
+            private int next = skipHoles(0);
+            private int last = -1;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next < arrayEnd;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= arrayEnd) {
+                    throw new NoSuchElementException();
+                }
+
+                last = next;
+                next = skipHoles(next + 1);
+                return (T) array[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+
+                // Removing through the list could compact it under the iterator
+                unlink(array[last]);
+                expectedModCount = modCount;
+                last = -1;
+            }
+
+            private int skipHoles(int i) {
+                while (i < arrayEnd && array[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+        };
+    }
+
+    /**
+     * Closes up the holes left by removed elements, keeping the order of the rest
+     */
+    private void compact() {
+        if (holes == 0) {
+            return;
+        }
+
+        Object[] compacted = new Object[Math.max(16, items.length)];
+        int to = 0;
+        for (int from = 0; from < end; from++) {
+            Object o = items[from];
+            if (o != null) {
+                compacted[to] = o;
+                if (to != from) {
+                    positions.put(o, to);
+                }
+                to++;
+            }
+        }
+
+        items = compacted;
+        end = to;
+        holes = 0;
+        shared = false;
+    }
+
+    /**
+     * Immutable view of the start of an array the list no longer changes
+     */
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] array;
+        private final int size;
+
+        Snapshot(Object[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (T) array[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(array, size);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.modsim.simulator;
 
 import java.awt.Graphics2D;
 
+import com.modsim.Main;
 import com.modsim.util.Vec2;
 
 public abstract class PickableEntity {
@@ -36,6 +37,7 @@ public abstract class PickableEntity {
     public final void move(Vec2 newPos) {
         pos.set(newPos);
         onMove(newPos);
+        Main.sim.spatial.update(this);
     }
 
     /**
@@ -0,0 +1,34 @@
+package com.modsim.simulator;
+
+import java.util.List;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.Link;
+
+/**
+ * Immutable snapshot of the simulation's module, link and entity lists, as they were after an edit. Snapshots can
+ * be used from any thread without locking, and share their storage with the lists they were taken from.
+ *
+ * Only the lists are captured - modules, links and entities themselves are the live objects.
+ */
+public final class Scene {
+
+    /** Incremented by every edit to the lists */
+    public final long version;
+
+    public final List<BaseModule> modules;
+    public final List<Link> links;
+    public final List<PickableEntity> entities;
+
+    // Modules the simulation starts each step from
+    final List<BaseModule> propModules;
+
+    Scene(long version, List<BaseModule> modules, List<Link> links, List<PickableEntity> entities,
+          List<BaseModule> propModules) {
+        this.version = version;
+        this.modules = modules;
+        this.links = links;
+        this.entities = entities;
+        this.propModules = propModules;
+    }
+}
@@ -1,70 +1,180 @@
 package com.modsim.simulator;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
 import com.modsim.Main;
 import com.modsim.modules.*;
 import static com.modsim.modules.BaseModule.AvailableModules;
 import com.modsim.modules.parts.Port;
-import sun.awt.Mutex;
 
 import com.modsim.util.BinData;
 import com.modsim.util.CtrlPt;
 
+/**
+ * The simulation. Its state - port values, module contents and propagation - has a single owner at a time: the
+ * simulation thread while it runs, otherwise whichever thread is applying commands. Other threads change it by
+ * submitting commands, which the owner applies between steps.
+ */
 public class Sim implements Runnable {
 
     private Thread thread;
-    public final Mutex lock = new Mutex();
 
+    // Commands waiting to be applied, and the thread currently owning the simulation state
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Thread> owner = new AtomicReference<>();
+
+    // Link IDs index the propagation 'visited' arrays, so IDs given up by removed links are reused
     private int lastLinkInd = 0;
+    private int[] freeLinkIDs = new int[16];
+    private int freeLinkCount = 0;
+
+    // Next unused module/port ID
+    private int nextID = 0;
 
     public static long delay = 2500000;
     public volatile boolean running = false;
 
     public String filePath = "";
 
+    // Count of designs replaced by newSim, so work begun on one design isn't applied to the next
+    private volatile int generation = 0;
+
     // Module list
-    private final List<BaseModule> modules = new ArrayList<>();
-    private final List<BaseModule> propModules = new ArrayList<>();
-    private final List<Link> links = new ArrayList<>();
-    private final List<PickableEntity> entities = new ArrayList<>();
+    private final EntityList<BaseModule> modules = new EntityList<>();
+    private final EntityList<BaseModule> propModules = new EntityList<>();
+    private final EntityList<Link> links = new EntityList<>();
+    private final EntityList<PickableEntity> entities = new EntityList<>();
+
+    // Count of edits to the lists, and the latest snapshot of them (see getScene)
+    private volatile long version = 0;
+    private volatile Scene scene = new Scene(0, modules.snapshot(), links.snapshot(), entities.snapshot(),
+            propModules.snapshot());
+
+    // Entities and links by location, for picking and selection
+    public final SpatialIndex spatial = new SpatialIndex();
+
+    // Modules flagged as in error, so the flags can be cleared without visiting every module
+    private final Set<BaseModule> errored = Collections.newSetFromMap(new IdentityHashMap<BaseModule, Boolean>());
 
     public double itrPerSec = 0;
     public int iterations = 0;
 
     // Deferred propagation mechanism
-    private List<BaseModule> deferredPropagators = new ArrayList<>();
+    private Set<BaseModule> deferredPropagators = new LinkedHashSet<>();
     private int deferring = 0;
 
-    private Queue<QueueItem> propagationQueue;
-    
+    private final Queue<QueueItem> propagationQueue = new LinkedList<>();
+
+    /**
+     * Submits a change to the simulation state. If the simulation thread is running, the command is applied before
+     * its next step; otherwise it is applied before this returns. Commands are applied in the order submitted, and
+     * commands submitted while applying another are applied straight away.
+     */
+    public void submit(Runnable command) {
+        Thread me = Thread.currentThread();
+        if (owner.get() == me) {
+            command.run();
+            return;
+        }
+
+        commands.add(command);
+        applyIfUnowned();
+    }
+
+    /**
+     * Submits a change to the simulation state and waits for it to be applied, for changes whose outcome the caller
+     * needs (e.g. loading a memory image)
+     * @return The command's result
+     * @throws Exception Anything thrown by the command
+     */
+    public <T> T submitAndWait(Callable<T> command) throws Exception {
+        FutureTask<T> task = new FutureTask<>(command);
+        submit(task);
+
+        try {
+            return task.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes ownership and applies the waiting commands, unless another thread owns the simulation (and so will
+     * apply them itself)
+     */
+    private void applyIfUnowned() {
+        Thread me = Thread.currentThread();
+        while (!commands.isEmpty() && owner.compareAndSet(null, me)) {
+            try {
+                applyCommands();
+            }
+            finally {
+                owner.set(null);
+            }
+        }
+    }
+
+    /**
+     * Applies the waiting commands - only called by the owning thread
+     */
+    private void applyCommands() {
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            try {
+                command.run();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Begin deferring propagation operations (preventing errors during large-scale operations)
      */
     public void beginDeferPropagations() {
-        deferring++;
+        submit(() -> deferring++);
     }
 
     /**
      * Finish deferring propagation operations (carries out the deferred propagations)
      */
     public void endDeferPropagations() {
-        deferring--;
-        assert(deferring >= 0);
+        submit(() -> {
+            deferring--;
+            assert(deferring >= 0);
 
-        if (deferring == 0) {
-            for (BaseModule m : deferredPropagators) {
-                propagate(m);
-            }
+            if (deferring == 0) {
+                for (BaseModule m : deferredPropagators) {
+                    runPropagation(m);
+                }
 
-            deferredPropagators.clear();
-        }
+                deferredPropagators.clear();
+            }
+        });
     }
 
     /**
@@ -91,48 +201,99 @@ public class Sim implements Runnable {
     // Grid size
     public int grid = 25;
 
-    // New simulation
+    /**
+     * Replaces the design with an empty one. The simulation state is cleared as a command, after any commands
+     * already submitted for the old design, along with propagation in progress. Must be called on the Swing thread.
+     */
     public void newSim() {
         // Reset the camera position
         Main.ui.view.camX = 0;
         Main.ui.view.camY = 0;
 
-        synchronized (this) {
-            modules.clear();
-            links.clear();
-            propModules.clear();
-            entities.clear();
-
-            Main.opStack.clearAll();
-            filePath = "";
-            Main.ui.updateTitle();
+        try {
+            submitAndWait(() -> {
+                // The design's file-backed memories are closed with it
+                NRAM.flushBackingFiles(getModules());
+
+                synchronized (this) {
+                    modules.clear();
+                    links.clear();
+                    propModules.clear();
+                    entities.clear();
+                    spatial.clear();
+                    version++;
+                    generation++;
+
+                    lastLinkInd = 0;
+                    freeLinkCount = 0;
+                    nextID = 0;
+                }
+
+                deferring = 0;
+                deferredPropagators.clear();
+                propagationQueue.clear();
+                clearErrors();
+                return null;
+            });
+        }
+        catch (Exception e) {
+            e.printStackTrace();
         }
-		propagationQueue = new LinkedList<QueueItem>();
+
+        Main.opStack.clearAll();
+        filePath = "";
+        Main.ui.updateTitle();
         Main.ui.view.flagStaticRedraw();
     }
 
     /**
-     * Module access (MUST be contained in
-     * synchronized (Main.sim) block)
+     * @return A count that changes whenever the design is replaced, e.g. by a new or loaded design
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Snapshot of the module, link and entity lists, which can be used from any thread without locking. While
+     * nothing has been edited this is just a read; the first call after an edit takes a new snapshot, waiting for
+     * any edit in progress to finish.
+     */
+    public Scene getScene() {
+        Scene s = scene;
+        if (s.version == version) {
+            return s;
+        }
+
+        synchronized (this) {
+            s = scene;
+            if (s.version != version) {
+                s = new Scene(version, modules.snapshot(), links.snapshot(), entities.snapshot(),
+                        propModules.snapshot());
+                scene = s;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Module access (immutable snapshot - see getScene)
      */
     public List<BaseModule> getModules() {
-        return modules;
+        return getScene().modules;
     }
 
     /**
-     * Entity access (MUST be contained in
-     * synchronized (Main.sim) block)
+     * Entity access (immutable snapshot - see getScene)
      */
     public List<PickableEntity> getEntities() {
-        return entities;
+        return getScene().entities;
     }
 
     /**
-     * Link access (MUST be contained in
-     * synchronized (Main.sim) block)
+     * Link access (immutable snapshot - see getScene)
      */
     public List<Link> getLinks() {
-        return links;
+        return getScene().links;
     }
 
     /**
@@ -144,12 +305,75 @@ public class Sim implements Runnable {
 
             if (ent.getType() == PickableEntity.MODULE) {
                 BaseModule m = (BaseModule) ent;
+                assignIDs(m);
                 modules.add(m);
                 if (m.getModType() == AvailableModules.CLOCK) {
                     propModules.add(m);
                 }
             }
             entities.add(ent);
+            spatial.add(ent);
+            version++;
+
+            // Modules only recalculate their transforms (and attached paths) when moved, so start them off
+            if (ent.getType() == PickableEntity.MODULE) {
+                ((BaseModule) ent).updateXForm();
+            }
+        }
+    }
+
+    /**
+     * Thread safe bulk module addition, for freshly loaded modules. Error flags raised while loading are kept.
+     */
+    public void addEntities(Collection<BaseModule> newModules) {
+        synchronized (this) {
+            for (BaseModule m : newModules) {
+                assignIDs(m);
+                modules.add(m);
+                if (m.getModType() == AvailableModules.CLOCK) {
+                    propModules.add(m);
+                }
+                entities.add(m);
+                spatial.add(m);
+                m.updateXForm();
+            }
+            version++;
+        }
+    }
+
+    /**
+     * Gives a module and its ports IDs, unless they already have them (e.g. from a file, or from before the module
+     * was removed and restored)
+     */
+    private void assignIDs(BaseModule m) {
+        if (m.ID < 0) {
+            m.ID = nextID++;
+        }
+        else {
+            nextID = Math.max(nextID, m.ID + 1);
+        }
+
+        for (Port p : m.ports) {
+            if (p.ID < 0) {
+                p.ID = nextID++;
+            }
+            else {
+                nextID = Math.max(nextID, p.ID + 1);
+            }
+        }
+    }
+
+    /**
+     * Reserves a block of unused module/port IDs, for modules (e.g. pasted ones) whose stored IDs may clash with
+     * those in the simulation
+     * @param count Number of IDs to reserve
+     * @return The first ID in the block
+     */
+    public int reserveIDs(int count) {
+        synchronized (this) {
+            int first = nextID;
+            nextID += count;
+            return first;
         }
     }
 
@@ -159,6 +383,8 @@ public class Sim implements Runnable {
     public void removeEntity(PickableEntity ent) {
         synchronized (this) {
             entities.remove(ent);
+            spatial.remove(ent);
+            version++;
 
             // Module-specific cleanup also removes leftover links
             if (ent.getType() == PickableEntity.MODULE) {
@@ -181,7 +407,10 @@ public class Sim implements Runnable {
     public void addLink(Link l) {
         synchronized (this) {
             clearErrors();
+            l.updatePath();
             links.add(l);
+            spatial.add(l);
+            version++;
 
             for (CtrlPt c : l.path.getCtrlPts()) {
                 addEntity(c);
@@ -189,11 +418,35 @@ public class Sim implements Runnable {
         }
     }
 
+    /**
+     * Thread safe bulk link (& control points) addition, for freshly loaded links. Error flags raised while
+     * checking the links are kept.
+     */
+    public void addLinks(Collection<Link> newLinks) {
+        synchronized (this) {
+            links.addAll(newLinks);
+            version++;
+
+            for (Link l : newLinks) {
+                spatial.add(l);
+                for (CtrlPt c : l.path.getCtrlPts()) {
+                    entities.add(c);
+                    spatial.add(c);
+                }
+            }
+        }
+    }
+
     /**
      * Yields a unique ID for a link
      */
     public int assignLinkID() {
-        return lastLinkInd++;
+        synchronized (this) {
+            if (freeLinkCount > 0) {
+                return freeLinkIDs[--freeLinkCount];
+            }
+            return lastLinkInd++;
+        }
     }
 
     /**
@@ -202,17 +455,43 @@ public class Sim implements Runnable {
     public void removeLink(Link l) {
         synchronized (this) {
             links.remove(l);
+            spatial.remove(l);
+            version++;
+
+            // The link gets a new ID if it's restored
+            int id = l.releaseLinkID();
+            if (id >= 0 && id < lastLinkInd) {
+                if (freeLinkCount == freeLinkIDs.length) {
+                    freeLinkIDs = Arrays.copyOf(freeLinkIDs, freeLinkCount * 2);
+                }
+                freeLinkIDs[freeLinkCount++] = id;
+            }
         }
         l.src.link = null;
-        l.targ.setVal(new BinData());
+        submit(() -> l.targ.setVal(new BinData()));
+    }
+
+    /**
+     * Flags a module as being in error, for visual feedback
+     */
+    public void flagError(BaseModule m) {
+        synchronized (errored) {
+            m.error = true;
+            m.displayChanged = true;
+            errored.add(m);
+        }
     }
 
     /**
      * Removes error flags from com.modsim.modules
      */
     public void clearErrors() {
-        for (BaseModule m : modules) {
-            m.error = false;
+        synchronized (errored) {
+            for (BaseModule m : errored) {
+                m.error = false;
+                m.displayChanged = true;
+            }
+            errored.clear();
         }
     }
 
@@ -220,10 +499,17 @@ public class Sim implements Runnable {
         int iterations = 0;
         long start = System.currentTimeMillis();
 
+        // Own the simulation state while running, waiting for any command being applied elsewhere
+        Thread me = Thread.currentThread();
+        while (!owner.compareAndSet(null, me)) {
+            LockSupport.parkNanos(100000);
+        }
+
         // Runs the sim constantly
         while(running) {
-            // Iterate
-            step();
+            // Apply changes made since the last step, then iterate
+            applyCommands();
+            cycle();
 
             // Calculate speed
             iterations++;
@@ -241,6 +527,10 @@ public class Sim implements Runnable {
                 nanoWait(delay);
             }
         }
+
+        // Hand back ownership, applying anything submitted after the last step
+        owner.set(null);
+        applyIfUnowned();
     }
 
     /**
@@ -264,31 +554,31 @@ public class Sim implements Runnable {
     }
 
     /**
-     * Recursive simulation
+     * Steps the simulation once (as a command)
      */
     public void step() {
-        synchronized (lock) {
-            // Don't run while we're deferring operations
-            if (deferring != 0) return;
+        submit(this::cycle);
+    }
 
-            //System.out.print("\nIteration " + iterations + " : ");
-            iterations++;
+    /**
+     * Recursive simulation - only called by the owning thread
+     */
+    private void cycle() {
+        // Don't run while we're deferring operations
+        if (deferring != 0) return;
 
-            for (int i = 0; i < propModules.size(); i++) {
-                BaseModule m = propModules.get(i);
+        //System.out.print("\nIteration " + iterations + " : ");
+        iterations++;
 
-                // Tick the clock(s)
-                if (m.getModType().equals(AvailableModules.CLOCK)) {
-                    ((Clock) m).tick();
-                }
-
-                // Begin propagation at the clocks AND switches
-                propagate(m);
+        for (BaseModule m : getScene().propModules) {
+            // Tick the clock(s)
+            if (m.getModType().equals(AvailableModules.CLOCK)) {
+                ((Clock) m).tick();
             }
-        }
 
-        // Request view update
-        Main.ui.view.flagDynamicRedraw();
+            // Begin propagation at the clocks AND switches
+            runPropagation(m);
+        }
     }
 
     /**
@@ -303,38 +593,44 @@ public class Sim implements Runnable {
         else {
             if (m == null) return;
             m.propagate();
+            if (m.displayed) {
+                m.updateDisplay();
+            }
 
             for (Port p : m.ports) {
                 if (!p.canOutput()) {
                     p.updated = false;
                     continue;
                 }
-                if (p.wasUpdated() && p.link != null) {
+                // Links can be removed on the Swing thread meanwhile
+                Link link = p.link;
+                if (p.wasUpdated() && link != null) {
                     // First make sure 'visited' array is big enough
-                    int id = p.link.getLinkID();
+                    int id = link.getLinkID();
                     if (id >= visited.length) {
                         visited = Arrays.copyOf(visited, id * 2 + 1);
                     }
 
                     // Check if we've visited this link before
                     if (visited[id]) {
-                        p.owner.error = true;
+                        flagError(p.owner);
                         running = false;
-                        JOptionPane.showMessageDialog(null, "Runtime loop detected! Halting simulation. Did you forget a register?");
+                        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+                                "Runtime loop detected! Halting simulation. Did you forget a register?"));
                         return;
                     }
 
                     // Recursively propagate
-                    if (p.link.targ == null) {
+                    if (link.targ == null) {
                         System.out.println("Warning: Null propagation target");
                         return;
                     }
-                    p.link.targ.setVal(p.getVal());
+                    link.targ.setVal(p.getVal());
 
                     // Add link to visited - remove after propagation
                     boolean[] clone = visited.clone();
                     clone[id] = true;
-                    propagationQueue.add(new QueueItem(p.link.targ.owner, clone));
+                    propagationQueue.add(new QueueItem(link.targ.owner, clone));
                 }
                 p.updated = false;
             }
@@ -342,19 +638,67 @@ public class Sim implements Runnable {
     }
 
     /**
-     * Propagates through a module
+     * Propagates through a module (as a command)
      * @param m Module to propagate
      */
     public void propagate(BaseModule m) {
-        synchronized (lock) {
-        	propagationQueue.add(new QueueItem(m, new boolean[1024]));
-        	while(!propagationQueue.isEmpty()){
-        		QueueItem it = propagationQueue.remove();
-        		doPropagate(it.baseModule, it.visited);
-        	}
-        }
+        submit(() -> runPropagation(m));
+    }
+
+    private void runPropagation(BaseModule m) {
+    	propagationQueue.add(new QueueItem(m, new boolean[1024]));
+    	while(!propagationQueue.isEmpty()){
+    		QueueItem it = propagationQueue.remove();
+    		doPropagate(it.baseModule, it.visited);
+    	}
     }
     
+    /**
+     * Settles the values of many modules at once, e.g. after a bulk load. Every module given pushes its outputs
+     * across its links; after that, modules are only re-propagated while their inputs are still changing.
+     * Unlike propagate, this does not check for runtime loops - links must already have been checked for them.
+     * Applied as a command.
+     * @param from Modules to settle from
+     */
+    public void settle(Collection<BaseModule> from) {
+        submit(() -> {
+            Deque<BaseModule> work = new ArrayDeque<>(from);
+            Set<BaseModule> queued = Collections.newSetFromMap(new IdentityHashMap<BaseModule, Boolean>());
+            queued.addAll(from);
+
+            // Guard against designs which never settle (e.g. clocked loops through a register's clock input)
+            long budget = 64L * (work.size() + 1);
+            int seeds = work.size();
+
+            while (!work.isEmpty()) {
+                if (budget-- == 0) {
+                    System.err.println("Warning: Design did not settle after loading");
+                    break;
+                }
+
+                BaseModule m = work.poll();
+                queued.remove(m);
+                m.propagate();
+                if (m.displayed) {
+                    m.updateDisplay();
+                }
+
+                for (Port p : m.ports) {
+                    if (p.canOutput() && p.link != null && p.link.targ != null
+                            && (seeds > 0 || p.wasUpdated())) {
+                        BaseModule target = p.link.targ.owner;
+                        if (p.link.targ.setVal(p.getVal()) && queued.add(target)) {
+                            work.add(target);
+                        }
+                    }
+                    p.updated = false;
+                }
+
+                if (seeds > 0) seeds--;
+            }
+        });
+    }
+
     class QueueItem {
     	private BaseModule baseModule;
     	private boolean[] visited;
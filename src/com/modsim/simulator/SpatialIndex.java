@@ -0,0 +1,356 @@
+package com.modsim.simulator;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.Link;
+import com.modsim.util.CtrlPt;
+import com.modsim.util.Path;
+
+/**
+ * Spatial index of the simulation's entities and links, so that picking and box selection only examine what is
+ * near the point or area in question.
+ *
+ * Entries are kept in a hierarchy of loose grids. Each entry is filed at the finest level whose cells are at least
+ * as big as it is, in the cell containing its centre, so it never extends more than half a cell beyond that cell.
+ * Moving an entry is constant time, and a query visits a handful of cells on each level.
+ *
+ * The index also records the areas where entries have been added, removed, moved or marked as changed, so the
+ * view can redraw just those parts of its static layer. Floating entries - those the view draws over its static
+ * layer, such as while they're dragged - move without recording changes.
+ */
+public class SpatialIndex {
+
+    private static final double BASE_CELL = 256;
+    private static final int LEVELS = 12;
+
+    // Pick radius of a control point
+    private static final double CTRL_PT_RADIUS = 15;
+
+    // Beyond this many changed areas, everything is treated as changed
+    private static final int MAX_CHANGED_AREAS = 4096;
+
+    private static final class Entry {
+        final Object item;
+        final long order;
+
+        double minX, minY, maxX, maxY;
+        int level = -1;
+        long cell;
+        int slot;
+        boolean floating;
+
+        Entry(Object item, long order) {
+            this.item = item;
+            this.order = order;
+        }
+    }
+
+    private final List<Map<Long, List<Entry>>> levels = new ArrayList<>(LEVELS);
+
+    private final Map<Object, Entry> entries = new IdentityHashMap<>();
+    private final Map<Path, Link> paths = new IdentityHashMap<>();
+
+    // Entries are returned in the order they were added, which is the order of the simulation's lists
+    private long nextOrder = 0;
+
+    // Areas changed since they were last taken
+    private List<Rectangle2D> changedAreas = new ArrayList<>();
+    private boolean allChanged = true;
+
+    public SpatialIndex() {
+        for (int i = 0; i < LEVELS; i++) {
+            levels.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Adds an entity (module or control point)
+     */
+    public synchronized void add(PickableEntity e) {
+        if (!entries.containsKey(e)) {
+            Entry entry = new Entry(e, nextOrder++);
+            entries.put(e, entry);
+            place(entry);
+        }
+    }
+
+    /**
+     * Adds a link, which is tracked by its path's bounds
+     */
+    public synchronized void add(Link l) {
+        if (!entries.containsKey(l)) {
+            Entry entry = new Entry(l, nextOrder++);
+            entries.put(l, entry);
+            paths.put(l.path, l);
+            place(entry);
+        }
+    }
+
+    /**
+     * Removes an entity or link
+     */
+    public synchronized void remove(Object o) {
+        Entry entry = entries.remove(o);
+        if (entry != null) {
+            unfile(entry);
+            changed(entry);
+            if (o instanceof Link) {
+                paths.remove(((Link) o).path);
+            }
+        }
+    }
+
+    /**
+     * Refiles an entity or link after it has moved or changed shape. Does nothing if it isn't indexed.
+     */
+    public synchronized void update(Object o) {
+        Entry entry = entries.get(o);
+        if (entry != null) {
+            place(entry);
+        }
+    }
+
+    /**
+     * Refiles the link a path belongs to, after its curves have been recalculated
+     */
+    public synchronized void pathChanged(Path p) {
+        Link l = paths.get(p);
+        if (l != null) {
+            update(l);
+        }
+    }
+
+    /**
+     * Gets the link a path belongs to
+     * @return The link, or null if the path isn't indexed
+     */
+    public synchronized Link linkOf(Path p) {
+        return paths.get(p);
+    }
+
+    /**
+     * Sets whether an entity or link is floating. Its area is recorded as changed, so the static layer is redrawn
+     * without (or with) it, but its moves aren't recorded while it floats. Does nothing if it isn't indexed.
+     */
+    public synchronized void setFloating(Object o, boolean floating) {
+        Entry entry = entries.get(o);
+        if (entry != null && entry.floating != floating) {
+            entry.floating = floating;
+            changed(entry);
+        }
+    }
+
+    /**
+     * Records an entity or link's area as changed, for changes to its appearance rather than its position
+     */
+    public synchronized void markChanged(Object o) {
+        Entry entry = entries.get(o);
+        if (entry != null) {
+            changed(entry);
+        }
+    }
+
+    public synchronized void clear() {
+        for (Map<Long, List<Entry>> level : levels) {
+            level.clear();
+        }
+        entries.clear();
+        paths.clear();
+
+        changedAreas.clear();
+        allChanged = true;
+    }
+
+    /**
+     * Takes the world-space areas where entries have changed since the last call
+     * @return The changed areas, or null if so much has changed that everything should be treated as changed
+     */
+    public synchronized List<Rectangle2D> takeChangedAreas() {
+        List<Rectangle2D> areas = allChanged ? null : changedAreas;
+        changedAreas = new ArrayList<>();
+        allChanged = false;
+        return areas;
+    }
+
+    private void changed(Entry entry) {
+        changed(entry.minX, entry.minY, entry.maxX, entry.maxY);
+    }
+
+    private void changed(double minX, double minY, double maxX, double maxY) {
+        if (allChanged) {
+            return;
+        }
+        if (changedAreas.size() >= MAX_CHANGED_AREAS) {
+            changedAreas.clear();
+            allChanged = true;
+            return;
+        }
+
+        changedAreas.add(new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY));
+    }
+
+    /**
+     * Finds the indexed items of the given type whose bounds overlap an area, in the order they were added
+     * @param type Class of items to return - e.g. PickableEntity, BaseModule or Link
+     */
+    public synchronized <T> List<T> query(Class<T> type, double x1, double y1, double x2, double y2) {
+        double minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+        double minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
+
+        List<Entry> found = new ArrayList<>();
+        double size = BASE_CELL;
+        for (int i = 0; i < LEVELS; i++, size *= 2) {
+            Map<Long, List<Entry>> level = levels.get(i);
+            if (level.isEmpty()) {
+                continue;
+            }
+
+            // Entries reach up to half a cell beyond their own cell
+            int cx1 = cellOf(minX - size / 2, size), cx2 = cellOf(maxX + size / 2, size);
+            int cy1 = cellOf(minY - size / 2, size), cy2 = cellOf(maxY + size / 2, size);
+
+            // Very large areas are cheaper to answer by checking every occupied cell
+            if ((long) (cx2 - cx1 + 1) * (cy2 - cy1 + 1) > level.size()) {
+                for (List<Entry> cell : level.values()) {
+                    collect(cell, type, minX, minY, maxX, maxY, found);
+                }
+                continue;
+            }
+
+            for (int cx = cx1; cx <= cx2; cx++) {
+                for (int cy = cy1; cy <= cy2; cy++) {
+                    List<Entry> cell = level.get(key(cx, cy));
+                    if (cell != null) {
+                        collect(cell, type, minX, minY, maxX, maxY, found);
+                    }
+                }
+            }
+        }
+
+        found.sort(Comparator.comparingLong(e -> e.order));
+
+        List<T> result = new ArrayList<>(found.size());
+        for (Entry e : found) {
+            result.add(type.cast(e.item));
+        }
+        return result;
+    }
+
+    private static void collect(List<Entry> cell, Class<?> type, double minX, double minY, double maxX, double maxY,
+                                List<Entry> found) {
+        for (Entry e : cell) {
+            if (e.maxX >= minX && e.minX <= maxX && e.maxY >= minY && e.minY <= maxY && type.isInstance(e.item)) {
+                found.add(e);
+            }
+        }
+    }
+
+    /**
+     * Recalculates an entry's bounds and moves it to the right cell
+     */
+    private void place(Entry entry) {
+        double minX = entry.minX, minY = entry.minY, maxX = entry.maxX, maxY = entry.maxY;
+        bounds(entry);
+
+        // Floating entries are drawn over the static layer, so their moves don't change it
+        if (!entry.floating) {
+            if (entry.level < 0) {
+                changed(entry);
+            }
+            else if (entry.minX != minX || entry.minY != minY || entry.maxX != maxX || entry.maxY != maxY) {
+                changed(minX, minY, maxX, maxY);
+                changed(entry);
+            }
+        }
+
+        double extent = Math.max(entry.maxX - entry.minX, entry.maxY - entry.minY);
+        int level = 0;
+        double size = BASE_CELL;
+        while (level < LEVELS - 1 && extent > size) {
+            level++;
+            size *= 2;
+        }
+
+        long cell = key(cellOf((entry.minX + entry.maxX) / 2, size), cellOf((entry.minY + entry.maxY) / 2, size));
+        if (level == entry.level && cell == entry.cell) {
+            return;
+        }
+
+        unfile(entry);
+        entry.level = level;
+        entry.cell = cell;
+
+        List<Entry> list = levels.get(level).computeIfAbsent(cell, k -> new ArrayList<>(4));
+        entry.slot = list.size();
+        list.add(entry);
+    }
+
+    /**
+     * Takes an entry out of its cell, moving the cell's last entry into its place
+     */
+    private void unfile(Entry entry) {
+        if (entry.level < 0) {
+            return;
+        }
+
+        Map<Long, List<Entry>> level = levels.get(entry.level);
+        List<Entry> list = level.get(entry.cell);
+        Entry last = list.remove(list.size() - 1);
+        if (last != entry) {
+            list.set(entry.slot, last);
+            last.slot = entry.slot;
+        }
+        if (list.isEmpty()) {
+            level.remove(entry.cell);
+        }
+
+        entry.level = -1;
+    }
+
+    private static void bounds(Entry entry) {
+        Object o = entry.item;
+
+        if (o instanceof BaseModule) {
+            BaseModule m = (BaseModule) o;
+            boolean sideways = (m.orientation & 1) != 0;
+            double hw = (sideways ? m.h : m.w) / 2;
+            double hh = (sideways ? m.w : m.h) / 2;
+            setBounds(entry, m.pos.x - hw, m.pos.y - hh, m.pos.x + hw, m.pos.y + hh);
+        }
+        else if (o instanceof CtrlPt) {
+            CtrlPt c = (CtrlPt) o;
+            setBounds(entry, c.pos.x - CTRL_PT_RADIUS, c.pos.y - CTRL_PT_RADIUS,
+                    c.pos.x + CTRL_PT_RADIUS, c.pos.y + CTRL_PT_RADIUS);
+        }
+        else if (o instanceof Link) {
+            Rectangle2D r = ((Link) o).path.getBounds();
+            setBounds(entry, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+        }
+        else {
+            PickableEntity e = (PickableEntity) o;
+            setBounds(entry, e.pos.x, e.pos.y, e.pos.x, e.pos.y);
+        }
+    }
+
+    private static void setBounds(Entry entry, double minX, double minY, double maxX, double maxY) {
+        entry.minX = minX;
+        entry.minY = minY;
+        entry.maxX = maxX;
+        entry.maxY = maxY;
+    }
+
+    private static int cellOf(double v, double size) {
+        return (int) Math.floor(v / size);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -28,6 +28,9 @@ public abstract class BaseTool {
 	// All operations must be cancellable
 	public abstract void cancel();
 
+	// Called before each frame is painted, to apply changes coalesced from input events since the last frame
+	public void beforePaint() {}
+
 	public void paintWorld(Graphics2D g) {}
 	public void paintScreen(Graphics2D g) {}
 }
@@ -30,7 +30,7 @@ public class EditLinkTool extends BaseTool {
 
     public EditLinkTool(Link link) {
         this.link = link;
-        link.highlight = true;
+        setHighlight(true);
 
         // Treat the edit operation atomically
         Main.opStack.beginCompoundOp();
@@ -41,7 +41,7 @@ public class EditLinkTool extends BaseTool {
         Vec2 worldPoint = ViewUtil.screenToWorld(new Vec2(x, y), false);
 
         CtrlPt pickCtrl = link.path.closestCtrlPt(worldPoint);
-        nearbyInfo = link.path.approxClosestPoint(worldPoint, 10);
+        nearbyInfo = link.path.closestPoint(worldPoint);
 
         if (pickCtrl != null && pickCtrl.pos.dist(worldPoint) < 25) {
             editPoint = new Vec2(pickCtrl.pos);
@@ -99,7 +99,7 @@ public class EditLinkTool extends BaseTool {
         else {
             // Quit out if the user clicks away
             Main.opStack.endCompoundOp();
-            link.highlight = false;
+            setHighlight(false);
             return null;
         }
 
@@ -110,7 +110,7 @@ public class EditLinkTool extends BaseTool {
     public BaseTool mouseDrag(int x, int y) {
         if (placePoint != null) {
             Vec2 worldPoint = ViewUtil.screenToWorld(new Vec2(x, y), false);
-            placePoint.pos.set(worldPoint);
+            placePoint.move(worldPoint);
             editPoint.set(placePoint.pos);
             link.path.calcCurves();
         }
@@ -139,14 +139,14 @@ public class EditLinkTool extends BaseTool {
             case KeyEvent.VK_DELETE:
             case KeyEvent.VK_BACK_SPACE:
                 Main.opStack.cancelCompoundOp();
-                link.highlight = false;
+                setHighlight(false);
                 link.delete();
                 return null;
 
             case KeyEvent.VK_ENTER:
                 // Done
                 Main.opStack.endCompoundOp();
-                link.highlight = false;
+                setHighlight(false);
                 return null;
         }
 
@@ -156,7 +156,15 @@ public class EditLinkTool extends BaseTool {
     @Override
     public void cancel() {
         Main.opStack.cancelCompoundOp();
-        link.highlight = false;
+        setHighlight(false);
+    }
+
+    /**
+     * Highlights the link being edited, redrawing it on the view's static layer
+     */
+    private void setHighlight(boolean highlight) {
+        link.highlight = highlight;
+        Main.sim.spatial.markChanged(link);
     }
 
     @Override
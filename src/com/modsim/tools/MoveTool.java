@@ -2,17 +2,29 @@ package com.modsim.tools;
 
 import com.modsim.gui.view.ViewUtil;
 import com.modsim.Main;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.Link;
+import com.modsim.modules.parts.Port;
 import com.modsim.operations.MoveOperation;
 import com.modsim.simulator.PickableEntity;
+import com.modsim.util.CtrlPt;
 import com.modsim.util.Vec2;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class MoveTool extends BaseTool {
 
 	private Vec2 startPt;
 	private List<PickableEntity> entities;
 
+	// Links attached to the entities, whose paths are recalculated as they move
+	private Set<Link> links = new LinkedHashSet<>();
+
+	// Offset from the latest drag, not yet applied
+	private Vec2 pending = null;
+
 	/**
 	 * Start a move operation. Assumes a selection exists in the View.
 	 */
@@ -23,7 +35,20 @@ public class MoveTool extends BaseTool {
 		for (PickableEntity e : entities) {
 			e.enabled = false;
 			e.tempPos.set(e.pos);
+
+			if (e instanceof BaseModule) {
+				for (Port p : ((BaseModule) e).ports) {
+					if (p.link != null) links.add(p.link);
+				}
+			}
+			else if (e instanceof CtrlPt) {
+				Link l = Main.sim.spatial.linkOf(((CtrlPt) e).parent);
+				if (l != null) links.add(l);
+			}
 		}
+
+		// The selection is drawn over the static layer while it moves
+		Main.ui.view.beginOverlay(entities, links);
 	}
 
 	@Override
@@ -31,23 +56,52 @@ public class MoveTool extends BaseTool {
 		Vec2 p = ViewUtil.screenToWorld(new Vec2(x, y), false);
         p.sub(startPt);
 
-        for (PickableEntity e : entities) {
-			e.moveRelative(p);
-		}
+		// Applied when the view next paints, so drags between frames are coalesced
+		pending = p;
 
 		return this; // still moving
 	}
 
+	@Override
+	public void beforePaint() {
+		if (pending != null) {
+			moveAll(pending);
+			pending = null;
+		}
+	}
+
+	/**
+	 * Moves the entities relative to their starting positions, recalculating each attached link's path once
+	 */
+	private void moveAll(Vec2 delta) {
+		for (PickableEntity e : entities) {
+			e.pos.set(e.tempPos);
+			e.pos.add(delta);
+
+			if (e instanceof BaseModule) {
+				((BaseModule) e).updateWorldXForm();
+			}
+			else {
+				Main.sim.spatial.update(e);
+			}
+		}
+
+		for (Link l : links) {
+			l.updatePath();
+		}
+	}
+
 	@Override
 	public BaseTool lbUp(int x, int y) {
 		Vec2 p = ViewUtil.screenToWorld(new Vec2(x, y), false);
 		p.sub(startPt);
+		moveAll(p);
+		Main.ui.view.endOverlay();
 
 		// We're done - store the operation
 		Main.opStack.beginCompoundOp();
 		for (PickableEntity e : entities) {
 			e.enabled = true;
-            e.moveRelative(p);
 			e.tempPos.set(0, 0);
 
 			Main.opStack.pushOp(new MoveOperation(e, p));
@@ -60,9 +114,11 @@ public class MoveTool extends BaseTool {
 	@Override
 	public void cancel() {
         // Reset entity positions
+        moveAll(new Vec2(0, 0));
+        Main.ui.view.endOverlay();
+
         for (PickableEntity e : entities) {
             e.enabled = true;
-            e.moveRelative(new Vec2(0, 0));
         }
     }
 
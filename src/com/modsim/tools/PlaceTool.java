@@ -69,7 +69,7 @@ public class PlaceTool extends BaseTool {
         }
 
         // Update view
-        Main.ui.view.flagStaticRedraw();
+        Main.ui.view.repaint();
         return this;
     }
 
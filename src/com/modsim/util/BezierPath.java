@@ -1,6 +1,8 @@
 package com.modsim.util;
 
 import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,49 +19,6 @@ public class BezierPath extends Path {
 	public List<BezierCurve> curves = new ArrayList<>();
 	protected ArrayList<CtrlPt> ctrlPts = new ArrayList<>();
 
-	public PointInfo approxClosestPoint(Vec2 searchPt, int iterations) {
-		Vec2 bestPoint = new Vec2();
-		double bestDist = Double.POSITIVE_INFINITY;
-        double bestT = 0;
-        int bestCurveIndex = -1;
-
-		for (int cInd = 0; cInd < curves.size(); cInd++) {
-            BezierCurve curve = curves.get(cInd);
-			double topT = 1.0;
-			double bottomT = 0.0;
-
-			for (int i = 0; i < iterations; i++) {
-				double t1 = bottomT + (topT - bottomT) / 4;
-				double t2 = topT - (topT - bottomT) / 4;
-				Vec2 p1 = curve.calcPoint(t1);
-				Vec2 p2 = curve.calcPoint(t2);
-
-				if (p1.dist(searchPt) < p2.dist(searchPt)) {
-					topT = (topT + bottomT) / 2;
-				}
-				else {
-					bottomT = (topT + bottomT) / 2;
-				}
-			}
-
-			Vec2 curvePoint = curve.calcPoint((topT + bottomT) / 2);
-			double curveDist = curvePoint.dist(searchPt);
-			if (curveDist < bestDist) {
-				bestDist = curveDist;
-				bestPoint = curvePoint;
-                bestCurveIndex = cInd;
-                bestT = (topT + bottomT) / 2;
-			}
-		}
-
-        PointInfo pInfo = new PointInfo();
-        pInfo.pt = bestPoint;
-        pInfo.dist = bestDist;
-        pInfo.curveIndex = bestCurveIndex;
-        pInfo.t = bestT;
-		return pInfo;
-	}
-
     public CtrlPt closestCtrlPt(Vec2 searchPt) {
         double bestDist = Double.POSITIVE_INFINITY;
         CtrlPt bestPt = null;
@@ -123,12 +82,14 @@ public class BezierPath extends Path {
 		first.p1 = new Vec2(end);
 		first.c1 = new Vec2(end);
 		first.update();
+		geometryChanged();
 	}
 	public void setStart(Vec2 end, Vec2 c) {
 		BezierCurve first = curves.get(0);
 		first.p1 = new Vec2(end);
 		first.c1 = new Vec2(c);
 		first.update();
+		geometryChanged();
 	}
 	public void setStart(Port p) {
 		Vec2 c1;
@@ -248,6 +209,15 @@ public class BezierPath extends Path {
 			last.update();
 			if (last2 != null) last2.update();
 		}
+
+		geometryChanged();
+		Main.sim.spatial.pathChanged(this);
+	}
+
+	protected void flatten(FlatPath f) {
+		for (BezierCurve c : curves) {
+			f.addCubic(c.curve);
+		}
 	}
 
 	/**
@@ -324,6 +294,31 @@ public class BezierPath extends Path {
 		calcCurves();
 	}
 
+	/**
+	 * Gets the world-space area the path covers
+	 */
+	public Rectangle2D getBounds() {
+		Rectangle2D bounds = null;
+		for (BezierCurve c : curves) {
+			if (bounds == null) bounds = c.curve.getBounds2D();
+			else bounds.add(c.curve.getBounds2D());
+		}
+		return bounds == null ? new Rectangle2D.Double() : bounds;
+	}
+
+	/**
+	 * Draw the path as straight lines through its control points
+	 * @param g Graphics context to draw with
+	 */
+	public void drawSimplified(Graphics2D g) {
+		Path2D.Double line = new Path2D.Double();
+		line.moveTo(curves.get(0).p1.x, curves.get(0).p1.y);
+		for (BezierCurve c : curves) {
+			line.lineTo(c.p2.x, c.p2.y);
+		}
+		g.draw(line);
+	}
+
 	/**
 	 * Draw the full path
 	 * @param g Graphics context to draw with
@@ -0,0 +1,222 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.NRAM;
+import com.modsim.util.DesignData.LinkRecord;
+import com.modsim.util.DesignData.ModuleRecord;
+
+import static com.modsim.util.BinaryWriter.*;
+
+/**
+ * Reads the binary (.modsimb) design format written by BinaryWriter. The file is mapped rather than read, and NRAM
+ * images are handed to their modules as read-only mappings of the file - an image is only copied once it's written
+ * to.
+ */
+public class BinaryReader {
+
+    /**
+     * @return True if the file starts with the binary format's magic number
+     */
+    public static boolean isBinary(File file) {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && ch.read(magic) >= 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a binary-format design
+     * @throws IOException If the file can't be read or isn't a valid design
+     */
+    static DesignData read(File file) throws IOException {
+        // Opened for reading only, so designs load from read-only media and their timestamps are left alone
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            long size = ch.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("File is too short to be a ModuleSim design");
+            }
+
+            ByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary ModuleSim design");
+            }
+            int version = header.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary format version " + version);
+            }
+            header.getShort();
+
+            DesignData data = new DesignData();
+            data.camX = header.getDouble();
+            data.camY = header.getDouble();
+            data.zoom = header.getInt();
+
+            int typeCount = header.getInt();
+            int moduleCount = header.getInt();
+            int portCount = header.getInt();
+            int linkCount = header.getInt();
+            int ctrlPtCount = header.getInt();
+            int imageCount = header.getInt();
+            header.getInt(); // data section length
+            long imageOffset = header.getLong();
+
+            if (imageCount < 0 || imageOffset < HEADER_SIZE || imageOffset > size
+                    || size - imageOffset < (long) imageCount * NRAM.IMAGE_SIZE) {
+                throw new IOException("Binary design is truncated or corrupt");
+            }
+
+            // Everything before the images is small, fixed-width records
+            ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, imageOffset - HEADER_SIZE);
+
+            // Counts are checked against what's left before they size anything, so corruption is reported
+            AvailableModules[] types = new AvailableModules[checkCount(typeCount, 4, buf, "module type")];
+            for (int i = 0; i < typeCount; i++) {
+                String name = readString(buf);
+                try {
+                    types[i] = AvailableModules.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Warning: Skipping unrecognized module '" + name + "'");
+                }
+            }
+
+            checkCount(moduleCount, MODULE_RECORD_SIZE, buf, "module");
+            ModuleRecord[] modules = new ModuleRecord[moduleCount];
+            int[] dataCounts = new int[moduleCount];
+            int[] imageIndices = new int[moduleCount];
+            for (int i = 0; i < moduleCount; i++) {
+                ModuleRecord m = new ModuleRecord();
+                m.ID = buf.getInt();
+                int type = buf.getShort();
+                if (type < 0 || type >= typeCount) {
+                    throw new IOException("Binary design refers to an unknown module type (" + type + ")");
+                }
+                m.type = types[type];
+                m.orientation = buf.getShort();
+                m.x = buf.getDouble();
+                m.y = buf.getDouble();
+                m.inputIDs = new int[checkCount(buf.getInt(), 4, buf, "input")];
+                m.outputIDs = new int[checkCount(buf.getInt(), 4, buf, "output")];
+                dataCounts[i] = checkCount(buf.getInt(), 8, buf, "data entry");
+                imageIndices[i] = buf.getInt();
+                modules[i] = m;
+            }
+
+            // Port IDs
+            for (ModuleRecord m : modules) {
+                for (int j = 0; j < m.inputIDs.length; j++) {
+                    m.inputIDs[j] = buf.getInt();
+                }
+                for (int j = 0; j < m.outputIDs.length; j++) {
+                    m.outputIDs[j] = buf.getInt();
+                }
+                portCount -= m.inputIDs.length + m.outputIDs.length;
+            }
+            if (portCount != 0) {
+                throw new IOException("Binary design's port table is corrupt");
+            }
+
+            checkCount(linkCount, LINK_RECORD_SIZE, buf, "link");
+            LinkRecord[] links = new LinkRecord[linkCount];
+            for (int i = 0; i < linkCount; i++) {
+                LinkRecord l = new LinkRecord();
+                l.src = buf.getInt();
+                l.targ = buf.getInt();
+                l.pathType = buf.getShort() == PATH_STRAIGHT ? XMLReader.STRAIGHT_TAG : XMLReader.BEZIER_TAG;
+                buf.getShort();
+                l.ctrlPts = new double[checkCount(buf.getInt(), 16, buf, "control point") * 2];
+                links[i] = l;
+            }
+
+            // Control points
+            for (LinkRecord l : links) {
+                for (int j = 0; j < l.ctrlPts.length; j++) {
+                    l.ctrlPts[j] = buf.getDouble();
+                }
+                ctrlPtCount -= l.ctrlPts.length / 2;
+            }
+            if (ctrlPtCount != 0) {
+                throw new IOException("Binary design's control point table is corrupt");
+            }
+
+            // Module data and memory images
+            for (int i = 0; i < moduleCount; i++) {
+                ModuleRecord m = modules[i];
+                for (int j = 0; j < dataCounts[i]; j++) {
+                    String key = readString(buf);
+                    m.data.put(key, readString(buf));
+                }
+
+                int image = imageIndices[i];
+                if (image >= 0 && m.type != null) {
+                    if (image >= imageCount) {
+                        throw new IOException("Binary design's memory image table is corrupt");
+                    }
+                    m.image = mapImage(ch, imageOffset + (long) image * NRAM.IMAGE_SIZE);
+                }
+
+                if (m.type != null) {
+                    data.modules.add(m);
+                }
+            }
+
+            for (LinkRecord l : links) {
+                data.links.add(l);
+            }
+
+            return data;
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Binary design is truncated or corrupt");
+        }
+        finally {
+            // Mappings remain valid once the channel is closed
+            ch.close();
+        }
+    }
+
+    /**
+     * Maps a memory image read-only. The NRAM adopting it copies it onto the heap if it's written to.
+     */
+    private static ByteBuffer mapImage(FileChannel ch, long offset) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, offset, NRAM.IMAGE_SIZE);
+    }
+
+    /**
+     * Checks a count read from the file against the bytes left to hold its records
+     * @param minSize Smallest size of each record, in bytes
+     * @param what Name of the records, for the error message
+     * @return The count
+     * @throws IOException If the count is negative, or too many records to fit
+     */
+    private static int checkCount(int count, int minSize, ByteBuffer buf, String what) throws IOException {
+        if (count < 0 || (long) count * minSize > buf.remaining()) {
+            throw new IOException("Binary design's " + what + " count is corrupt (" + count + ")");
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            throw new IOException("Binary design contains a corrupt string");
+        }
+
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
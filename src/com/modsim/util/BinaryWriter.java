@@ -0,0 +1,188 @@
+package com.modsim.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.util.DesignData.LinkRecord;
+import com.modsim.util.DesignData.ModuleRecord;
+
+/**
+ * Writes the binary (.modsimb) design format. It holds the same information as the XML format, but as
+ * fixed-width records that can be read without parsing, and with NRAM contents stored as raw memory images.
+ *
+ * Layout, big-endian:
+ * <pre>
+ *   header        magic, version, view, section counts and the offset of the first memory image
+ *   type table    module type names, referenced by index
+ *   modules       fixed-width records: ID, type, orientation, position, port/data counts, image index
+ *   port table    port IDs, each module's input side then output side, in module order
+ *   links         fixed-width records: source, target, path type, control point count
+ *   ctrl points   x/y pairs, in link order
+ *   data          each module's data map entries, in module order
+ *   images        distinct NRAM memory images, page-aligned so they can be mapped in place
+ * </pre>
+ */
+public class BinaryWriter {
+
+    static final int MAGIC = 0x4D534D42; // "MSMB"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int MODULE_RECORD_SIZE = 40;
+    static final int LINK_RECORD_SIZE = 16;
+    static final int IMAGE_ALIGN = 4096;
+
+    static final int PATH_BEZIER = 0;
+    static final int PATH_STRAIGHT = 1;
+
+    /**
+     * Writes a binary format file
+     */
+    static void write(File binFile, DesignData data) throws IOException {
+        Map<AvailableModules, Integer> types = new LinkedHashMap<>();
+        List<ByteBuffer> images = new ArrayList<>();
+        Map<ByteBuffer, Integer> imageIndex = new HashMap<>();
+        int portCount = 0, ctrlPtCount = 0;
+
+        ByteArrayOutputStream moduleBytes = new ByteArrayOutputStream(data.modules.size() * MODULE_RECORD_SIZE);
+        ByteArrayOutputStream portBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream moduleOut = new DataOutputStream(moduleBytes);
+        DataOutputStream portOut = new DataOutputStream(portBytes);
+        DataOutputStream dataOut = new DataOutputStream(dataBytes);
+
+        for (ModuleRecord m : data.modules) {
+            Integer type = types.get(m.type);
+            if (type == null) {
+                type = types.size();
+                types.put(m.type, type);
+            }
+
+            // NRAM contents are stored as raw images, with identical memories sharing one image
+            int image = -1;
+            if (m.image != null) {
+                Integer index = imageIndex.get(m.image);
+                if (index == null) {
+                    index = images.size();
+                    images.add(m.image);
+                    imageIndex.put(m.image, index);
+                }
+                image = index;
+            }
+
+            moduleOut.writeInt(m.ID);
+            moduleOut.writeShort(type);
+            moduleOut.writeShort(m.orientation);
+            moduleOut.writeDouble(m.x);
+            moduleOut.writeDouble(m.y);
+            moduleOut.writeInt(m.inputIDs.length);
+            moduleOut.writeInt(m.outputIDs.length);
+            moduleOut.writeInt(m.data == null ? 0 : m.data.size());
+            moduleOut.writeInt(image);
+
+            for (int id : m.inputIDs) {
+                portOut.writeInt(id);
+            }
+            for (int id : m.outputIDs) {
+                portOut.writeInt(id);
+            }
+            portCount += m.inputIDs.length + m.outputIDs.length;
+
+            if (m.data != null) {
+                for (Map.Entry<String, String> entry : new TreeMap<>(m.data).entrySet()) {
+                    writeString(dataOut, entry.getKey());
+                    writeString(dataOut, entry.getValue());
+                }
+            }
+        }
+
+        ByteArrayOutputStream linkBytes = new ByteArrayOutputStream(data.links.size() * LINK_RECORD_SIZE);
+        ByteArrayOutputStream ctrlPtBytes = new ByteArrayOutputStream();
+        DataOutputStream linkOut = new DataOutputStream(linkBytes);
+        DataOutputStream ctrlPtOut = new DataOutputStream(ctrlPtBytes);
+
+        for (LinkRecord l : data.links) {
+            linkOut.writeInt(l.src);
+            linkOut.writeInt(l.targ);
+            linkOut.writeShort(XMLReader.STRAIGHT_TAG.equals(l.pathType) ? PATH_STRAIGHT : PATH_BEZIER);
+            linkOut.writeShort(0);
+            linkOut.writeInt(l.ctrlPts.length / 2);
+
+            for (double d : l.ctrlPts) {
+                ctrlPtOut.writeDouble(d);
+            }
+            ctrlPtCount += l.ctrlPts.length / 2;
+        }
+
+        ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+        DataOutputStream typeOut = new DataOutputStream(typeBytes);
+        for (AvailableModules type : types.keySet()) {
+            writeString(typeOut, type.name());
+        }
+
+        long structureEnd = HEADER_SIZE + typeBytes.size() + moduleBytes.size() + portBytes.size()
+                + linkBytes.size() + ctrlPtBytes.size() + dataBytes.size();
+        long imageOffset = (structureEnd + IMAGE_ALIGN - 1) / IMAGE_ALIGN * IMAGE_ALIGN;
+
+        // Header
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 0);
+        header.putDouble(data.camX);
+        header.putDouble(data.camY);
+        header.putInt(data.zoom);
+        header.putInt(types.size());
+        header.putInt(data.modules.size());
+        header.putInt(portCount);
+        header.putInt(data.links.size());
+        header.putInt(ctrlPtCount);
+        header.putInt(images.size());
+        header.putInt(dataBytes.size());
+        header.putLong(imageOffset);
+        header.clear();
+
+        try (FileChannel ch = FileChannel.open(binFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(ch, header);
+            for (ByteArrayOutputStream section : new ByteArrayOutputStream[] {
+                    typeBytes, moduleBytes, portBytes, linkBytes, ctrlPtBytes, dataBytes }) {
+                writeFully(ch, ByteBuffer.wrap(section.toByteArray()));
+            }
+
+            ch.position(imageOffset);
+            for (ByteBuffer image : images) {
+                writeFully(ch, image.duplicate());
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            ch.write(buf);
+        }
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string. Unlike writeUTF, this isn't limited to 64K, which long data strings
+     * can exceed.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
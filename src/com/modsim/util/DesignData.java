@@ -0,0 +1,158 @@
+package com.modsim.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.modsim.Main;
+import com.modsim.gui.view.View;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Link;
+import com.modsim.modules.NRAM;
+import com.modsim.modules.parts.Port;
+
+/**
+ * A design as stored in a file, separate from the live modules. Keeping the parsed records separate from module
+ * creation lets loading build the modules in parallel, off the Swing thread, and capturing the records lets saving
+ * write them out while the design carries on changing.
+ */
+final class DesignData {
+    public final List<ModuleRecord> modules = new ArrayList<>();
+    public final List<LinkRecord> links = new ArrayList<>();
+
+    public double camX;
+    public double camY;
+    public int zoom;
+
+    /**
+     * Captures the given modules and links, along with the view, for writing out. Modules and ports keep the IDs
+     * the simulation gave them. The records are copied as a single simulation command, so the capture is consistent
+     * with respect to propagation; the result shares nothing with the simulation, so it can be written out on
+     * another thread.
+     * @throws Exception If the capture fails
+     */
+    static DesignData capture(List<BaseModule> modules, List<Link> links) throws Exception {
+        View v = Main.ui.view;
+        return capture(modules, links, v.camX, v.camY, v.zoomI);
+    }
+
+    /**
+     * Captures the given modules and links along with the given view, so the capture can be made off the Swing
+     * thread
+     * @throws Exception If the capture fails
+     */
+    static DesignData capture(List<BaseModule> modules, List<Link> links, double camX, double camY, int zoom)
+            throws Exception {
+        DesignData data = new DesignData();
+        data.camX = camX;
+        data.camY = camY;
+        data.zoom = zoom;
+
+        Main.sim.submitAndWait(() -> {
+            addRecords(data, modules, links);
+            return null;
+        });
+        return data;
+    }
+
+    /**
+     * Copies the module and link records into the captured design. Applied by the simulation's owner.
+     */
+    private static void addRecords(DesignData data, List<BaseModule> modules, List<Link> links) {
+        for (BaseModule m : modules) {
+            ModuleRecord rec = new ModuleRecord();
+            rec.type = m.getModType();
+            rec.ID = m.ID;
+            rec.x = m.pos.x;
+            rec.y = m.pos.y;
+            rec.orientation = m.orientation;
+
+            List<Port> inputSide = DesignLoader.getInputSide(m);
+            rec.inputIDs = new int[inputSide.size()];
+            for (int i = 0; i < rec.inputIDs.length; i++) {
+                rec.inputIDs[i] = inputSide.get(i).ID;
+            }
+
+            List<Port> outputSide = DesignLoader.getOutputSide(m);
+            rec.outputIDs = new int[outputSide.size()];
+            for (int i = 0; i < rec.outputIDs.length; i++) {
+                rec.outputIDs[i] = outputSide.get(i).ID;
+            }
+
+            // NRAM contents are copied raw - encoding them is left to the writer
+            if (m instanceof NRAM) {
+                NRAM nram = (NRAM) m;
+                rec.data = nram.settingsOut();
+
+                // File-backed memories keep their contents in the backing file, and blank ones needn't be stored
+                if (nram.getBackingFile() == null) {
+                    // The image may be mapped from the file being replaced
+                    nram.detachImage();
+                    if (!nram.isBlank()) {
+                        rec.image = ByteBuffer.allocate(NRAM.IMAGE_SIZE);
+                        rec.image.put(nram.getImage());
+                        rec.image.flip();
+                    }
+                }
+            }
+            else {
+                rec.data = m.dataOut();
+            }
+
+            data.modules.add(rec);
+        }
+
+        for (Link l : links) {
+            LinkRecord rec = new LinkRecord();
+            rec.src = l.src.ID;
+            rec.targ = l.targ.ID;
+            rec.pathType = l.path.XMLTagName();
+            rec.ctrlPts = new double[l.path.ctrlPts.size() * 2];
+            int i = 0;
+            for (CtrlPt c : l.path.ctrlPts) {
+                rec.ctrlPts[i++] = c.pos.x;
+                rec.ctrlPts[i++] = c.pos.y;
+            }
+
+            data.links.add(rec);
+        }
+    }
+
+    /**
+     * Stored state of a single module
+     */
+    static final class ModuleRecord {
+        public AvailableModules type;
+        public int ID;
+
+        public double x, y;
+        public int orientation;
+
+        // Legacy label element - newer files store the label in the data map
+        public String label = null;
+        public int labelSize = 0;
+
+        // Stored port IDs, on the input and output sides respectively
+        public int[] inputIDs = new int[0];
+        public int[] outputIDs = new int[0];
+
+        // Null if the module stores no data
+        public HashMap<String, String> data = new HashMap<>();
+
+        // Raw NRAM contents, from binary files or captured for saving
+        public ByteBuffer image = null;
+    }
+
+    /**
+     * Stored state of a single link
+     */
+    static final class LinkRecord {
+        public int src, targ;
+        public String pathType;
+
+        // Control points, as x/y pairs
+        public double[] ctrlPts = new double[0];
+    }
+}
@@ -0,0 +1,790 @@
+package com.modsim.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.Main;
+import com.modsim.gui.view.View;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.BaseModule.AvailableModules;
+import com.modsim.modules.Link;
+import com.modsim.modules.parts.Port;
+import com.modsim.simulator.PickableEntity;
+import com.modsim.simulator.Scene;
+import com.modsim.util.DesignData.LinkRecord;
+import com.modsim.util.DesignData.ModuleRecord;
+
+/**
+ * Journal of the edits made to the current design, for recovery after a crash. Each completed operation appends
+ * the resulting state of the modules and links it touched, so journalling costs in proportion to the edit rather
+ * than the design. Appends are written by a background thread.
+ *
+ * The journal starts from a base - an empty design, the design's file as last loaded or saved, or a snapshot
+ * written by the journal itself. Once the journal grows large, it is compacted by writing a new snapshot and
+ * starting afresh. Recovery loads the base and replays the journal over it.
+ *
+ * Modules are identified by a key, assigned in module order when the journal starts (matching the order they're
+ * stored in the base) and in creation order thereafter. Links are identified by their end points.
+ */
+public class DesignJournal {
+
+    private static final int MAGIC = 0x4D534A4C; // "MSJL"
+    private static final int VERSION = 3;
+
+    // Journals from before module data entries were added hold a subset of the records, so can still be read
+    private static final int MIN_VERSION = 2;
+
+    private static final int BASE_EMPTY = 0;
+    private static final int BASE_FILE = 1;
+    private static final int BASE_SNAPSHOT = 2;
+
+    private static final byte MODULE_ADD = 1;
+    private static final byte MODULE_PLACE = 2;
+    private static final byte MODULE_REMOVE = 3;
+    private static final byte LINK_SET = 4;
+    private static final byte LINK_REMOVE = 5;
+    private static final byte MODULE_DATA = 6;
+
+    // Journal size past which it is compacted into a snapshot
+    private static final long COMPACT_SIZE = 4 << 20;
+
+    private final File file;
+    private final File[] snapshots;
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Journal writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Keys of the modules present in the design, as far as the journal knows
+    private final IdentityHashMap<BaseModule, Integer> keys = new IdentityHashMap<>();
+    private int nextKey = 0;
+
+    // Bytes queued for the journal since it was started
+    private long size = 0;
+    private int snapshotSlot = 0;
+
+    // Modules and links touched by the operation being recorded - true if present afterwards, false if removed,
+    // null if only changed
+    private final Map<Object, Boolean> changes = new IdentityHashMap<>();
+    private final List<Object> changeOrder = new ArrayList<>();
+
+    // Modules among those changed whose data has changed, e.g. an NRAM given a backing file
+    private final Set<BaseModule> dataChanges = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Opens the journal in the user's ModuleSim directory. Only one instance of the program can use the journal
+     * at a time.
+     * @return The journal, or null if it is unavailable
+     */
+    public static DesignJournal open() {
+        File dir = new File(System.getProperty("user.home"), ".modsim");
+        try {
+            Files.createDirectories(dir.toPath());
+            DesignJournal journal = new DesignJournal(dir);
+            if (journal.lock == null) {
+                System.out.println("Autosave journal is in use by another instance");
+                journal.channel.close();
+                return null;
+            }
+            return journal;
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private DesignJournal(File dir) throws IOException {
+        file = new File(dir, "autosave.journal");
+        snapshots = new File[] { new File(dir, "autosave-0.modsimb"), new File(dir, "autosave-1.modsimb") };
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        lock = channel.tryLock();
+    }
+
+    /**
+     * Starts the journal afresh from the current design. Must be called whenever the design is replaced, saved or
+     * loaded, as well as after recovery.
+     * @param snapshot Whether the design differs from its file (or from an empty design, if it has none), in
+     *                 which case a snapshot of it is written as the base
+     */
+    public void restart(boolean snapshot) {
+        keys.clear();
+        changes.clear();
+        changeOrder.clear();
+        dataChanges.clear();
+        nextKey = 0;
+
+        final String docPath = Main.sim.filePath;
+        final Scene scene = Main.sim.getScene();
+        for (BaseModule m : scene.modules) {
+            keys.put(m, nextKey++);
+        }
+
+        // Alternate between snapshots, so the previous base survives until the journal has moved on
+        final File snapshotFile;
+        if (snapshot) {
+            snapshotSlot ^= 1;
+            snapshotFile = snapshots[snapshotSlot];
+        }
+        else {
+            snapshotFile = null;
+        }
+
+        View v = Main.ui.view;
+        final double camX = v.camX, camY = v.camY;
+        final int zoom = v.zoomI;
+
+        // The snapshot is captured and written along with the header off the Swing thread, so compacting a large
+        // design doesn't hold up editing. Entries hold the resulting state of what they touch, so they still apply
+        // over a snapshot that already includes them.
+        size = 0;
+        writer.execute(() -> {
+            try {
+                DesignData data = null;
+                if (snapshotFile != null) {
+                    try {
+                        data = DesignData.capture(scene.modules, scene.links, camX, camY, zoom);
+                    }
+                    catch (Exception e) {
+                        // Falls back to basing the journal on the design's file, as if it were unchanged
+                        e.printStackTrace();
+                    }
+                }
+
+                final int baseKind;
+                final File base;
+                if (data != null) {
+                    // The old journal stays valid until the snapshot is complete
+                    BinaryWriter.write(snapshotFile, data);
+                    base = snapshotFile;
+                    baseKind = BASE_SNAPSHOT;
+                }
+                else if (scene.modules.isEmpty() || docPath.isEmpty()) {
+                    base = null;
+                    baseKind = BASE_EMPTY;
+                }
+                else {
+                    base = new File(docPath);
+                    baseKind = BASE_FILE;
+                }
+
+                channel.truncate(0);
+                channel.position(0);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeShort(baseKind);
+                writeString(out, docPath);
+                writeString(out, base == null ? "" : base.getPath());
+                out.writeLong(base == null ? 0 : base.length());
+                out.writeLong(base == null ? 0 : base.lastModified());
+
+                writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+                channel.force(false);
+            }
+            catch (IOException e) {
+                // Without a header, the entries that follow will be ignored
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Records that an entity or link has been added to the design
+     */
+    public void added(Object o) {
+        touch(o, Boolean.TRUE);
+    }
+
+    /**
+     * Records that an entity or link has been removed from the design
+     */
+    public void removed(Object o) {
+        touch(o, Boolean.FALSE);
+    }
+
+    /**
+     * Records that an entity or link has been changed in place
+     */
+    public void changed(Object o) {
+        touch(o, null);
+    }
+
+    /**
+     * Records that a module's data has been changed, along with its placement
+     */
+    public void dataChanged(BaseModule m) {
+        touch(m, null);
+        dataChanges.add(m);
+    }
+
+    private void touch(Object o, Boolean present) {
+        // Control points are part of their link
+        if (o instanceof PickableEntity && ((PickableEntity) o).getType() == PickableEntity.CTRLPT) {
+            o = Main.sim.spatial.linkOf(((CtrlPt) o).parent);
+            present = null;
+            if (o == null) return;
+        }
+
+        if (!changes.containsKey(o)) {
+            changeOrder.add(o);
+            changes.put(o, present);
+        }
+        else if (present != null) {
+            changes.put(o, present);
+        }
+    }
+
+    /**
+     * Appends the changes recorded since the last commit as a single entry, so an operation is either recovered
+     * whole or not at all
+     */
+    public void commit() {
+        if (changeOrder.isEmpty()) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            // Link removals go first, while their modules are still known
+            for (Object o : changeOrder) {
+                if (o instanceof Link && changes.get(o) == Boolean.FALSE) {
+                    writeLinkEnds(out, LINK_REMOVE, (Link) o);
+                }
+            }
+
+            Map<BaseModule, HashMap<String, String>> moduleData = takeData();
+
+            for (Object o : changeOrder) {
+                if (!(o instanceof BaseModule)) continue;
+
+                BaseModule m = (BaseModule) o;
+                Boolean present = changes.get(o);
+                Integer key = keys.get(m);
+
+                if (present == Boolean.FALSE) {
+                    if (key != null) {
+                        out.writeByte(MODULE_REMOVE);
+                        out.writeInt(key);
+                        keys.remove(m);
+                    }
+                }
+                else if (key == null) {
+                    if (present == Boolean.TRUE) {
+                        keys.put(m, nextKey);
+                        writeModule(out, nextKey++, m, moduleData.get(m));
+                    }
+                }
+                else {
+                    out.writeByte(MODULE_PLACE);
+                    out.writeInt(key);
+                    out.writeDouble(m.pos.x);
+                    out.writeDouble(m.pos.y);
+                    out.writeInt(m.orientation);
+                    writeString(out, m.label);
+                    out.writeInt(m.labelSize);
+
+                    if (dataChanges.contains(m)) {
+                        out.writeByte(MODULE_DATA);
+                        out.writeInt(key);
+                        writeData(out, moduleData.get(m));
+                    }
+                }
+            }
+
+            for (Object o : changeOrder) {
+                if (o instanceof Link && changes.get(o) != Boolean.FALSE) {
+                    Link l = (Link) o;
+                    if (writeLinkEnds(out, LINK_SET, l)) {
+                        out.writeBoolean(XMLReader.STRAIGHT_TAG.equals(l.path.XMLTagName()));
+                        out.writeInt(l.path.ctrlPts.size());
+                        for (CtrlPt c : l.path.ctrlPts) {
+                            out.writeDouble(c.pos.x);
+                            out.writeDouble(c.pos.y);
+                        }
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            // Can't happen when writing to memory
+            e.printStackTrace();
+        }
+
+        changes.clear();
+        changeOrder.clear();
+        dataChanges.clear();
+
+        if (bytes.size() == 0) return;
+        append(bytes.toByteArray());
+
+        if (size > COMPACT_SIZE) {
+            restart(true);
+        }
+    }
+
+    /**
+     * Takes the data of the modules being added or having their data changed, as a single simulation command,
+     * since modules' data (NRAM contents in particular) belongs to the simulation
+     * @return The modules' data, or an empty map if it couldn't be taken
+     */
+    private Map<BaseModule, HashMap<String, String>> takeData() {
+        List<BaseModule> needed = new ArrayList<>();
+        for (Object o : changeOrder) {
+            if (!(o instanceof BaseModule)) continue;
+
+            boolean adding = changes.get(o) == Boolean.TRUE && !keys.containsKey(o);
+            if (adding || dataChanges.contains(o)) {
+                needed.add((BaseModule) o);
+            }
+        }
+
+        Map<BaseModule, HashMap<String, String>> data = new IdentityHashMap<>();
+        if (needed.isEmpty()) return data;
+
+        try {
+            Main.sim.submitAndWait(() -> {
+                for (BaseModule m : needed) {
+                    data.put(m, m.dataOut());
+                }
+                return null;
+            });
+        }
+        catch (Exception e) {
+            // The modules are recovered with their default settings
+            e.printStackTrace();
+        }
+        return data;
+    }
+
+    private void writeModule(DataOutputStream out, int key, BaseModule m, HashMap<String, String> data)
+            throws IOException {
+        out.writeByte(MODULE_ADD);
+        out.writeInt(key);
+        writeString(out, m.getModType().name());
+        out.writeDouble(m.pos.x);
+        out.writeDouble(m.pos.y);
+        out.writeInt(m.orientation);
+
+        // Modules keep their IDs through recovery, as they do through saving
+        out.writeInt(m.ID);
+        writePortIDs(out, DesignLoader.getInputSide(m));
+        writePortIDs(out, DesignLoader.getOutputSide(m));
+
+        writeData(out, data);
+    }
+
+    private static void writeData(DataOutputStream out, HashMap<String, String> data) throws IOException {
+        out.writeInt(data == null ? 0 : data.size());
+        if (data != null) {
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue());
+            }
+        }
+    }
+
+    private static void writePortIDs(DataOutputStream out, List<Port> ports) throws IOException {
+        out.writeInt(ports.size());
+        for (Port p : ports) {
+            out.writeInt(p.ID);
+        }
+    }
+
+    /**
+     * Writes a link record's type and end points - each a module key and the port's index on that module
+     * @return False if either end's module isn't known, in which case nothing is written
+     */
+    private boolean writeLinkEnds(DataOutputStream out, byte type, Link l) throws IOException {
+        Integer srcKey = keys.get(l.src.owner);
+        Integer targKey = keys.get(l.targ.owner);
+        if (srcKey == null || targKey == null) return false;
+
+        out.writeByte(type);
+        out.writeInt(srcKey);
+        out.writeInt(portIndex(l.src));
+        out.writeInt(targKey);
+        out.writeInt(portIndex(l.targ));
+        return true;
+    }
+
+    /**
+     * @return The port's index among its module's input side then output side, as stored in files
+     */
+    private static int portIndex(Port p) {
+        List<Port> inputSide = DesignLoader.getInputSide(p.owner);
+        int i = inputSide.indexOf(p);
+        return i >= 0 ? i : inputSide.size() + DesignLoader.getOutputSide(p.owner).indexOf(p);
+    }
+
+    private void append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        final ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(payload);
+        frame.flip();
+
+        size += frame.capacity();
+        writer.execute(() -> {
+            try {
+                writeFully(frame);
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /**
+     * Finishes writing and removes the journal. Called on a clean exit, when there is nothing to recover.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            lock.release();
+            channel.close();
+        }
+        catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        file.delete();
+        for (File f : snapshots) {
+            f.delete();
+        }
+    }
+
+    /**
+     * @return True if the journal holds work that was never saved
+     */
+    public boolean hasChanges() {
+        try {
+            ByteBuffer buf = readJournal();
+            Header h = new Header(buf);
+            return h.baseKind == BASE_SNAPSHOT || nextFrame(buf) != null;
+        }
+        catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the current design with the journal's base, replayed up to the last complete entry
+     * @return True if the design was recovered
+     */
+    public boolean recover() {
+        try {
+            ByteBuffer buf = readJournal();
+            Header h = new Header(buf);
+            DesignData data = loadBase(h);
+
+            // Index the base modules by key - they're keyed in stored order
+            TreeMap<Integer, ModuleRecord> modules = new TreeMap<>();
+            for (ModuleRecord m : data.modules) {
+                modules.put(modules.size(), m);
+            }
+
+            int entries = 0;
+            ByteBuffer frame;
+            while ((frame = nextFrame(buf)) != null) {
+                while (frame.hasRemaining()) {
+                    replay(frame, modules, data.links);
+                }
+                entries++;
+            }
+
+            data.modules.clear();
+            data.modules.addAll(modules.values());
+
+            ResultData result = DesignLoader.build(data, true, () -> false, null);
+            DesignLoader.install(result);
+
+            Main.sim.filePath = h.docPath;
+            Main.ui.updateTitle();
+            System.out.println("Recovered design from journal (" + entries + " changes)");
+            return true;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Unable to recover the design: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private DesignData loadBase(Header h) throws Exception {
+        if (h.baseKind == BASE_EMPTY) {
+            return new DesignData();
+        }
+
+        File base = new File(h.basePath);
+        if (base.length() != h.baseLength || base.lastModified() != h.baseModified) {
+            throw new IOException(base.getPath() + " has changed since the unsaved work was done");
+        }
+
+        if (BinaryReader.isBinary(base)) {
+            return BinaryReader.read(base);
+        }
+        try (java.io.InputStream in = new java.io.BufferedInputStream(Files.newInputStream(base.toPath()))) {
+            return XMLReader.parse(in);
+        }
+    }
+
+    /**
+     * Applies a single record to the design
+     */
+    private static void replay(ByteBuffer in, TreeMap<Integer, ModuleRecord> modules, List<LinkRecord> links)
+            throws IOException {
+        byte type = in.get();
+        switch (type) {
+            case MODULE_ADD: {
+                int key = in.getInt();
+                ModuleRecord m = new ModuleRecord();
+                m.type = AvailableModules.valueOf(readString(in));
+                m.x = in.getDouble();
+                m.y = in.getDouble();
+                m.orientation = in.getInt();
+                m.ID = in.getInt();
+                m.inputIDs = readPortIDs(in);
+                m.outputIDs = readPortIDs(in);
+                m.data = readData(in);
+
+                removeModule(modules.put(key, m), links);
+                break;
+            }
+            case MODULE_PLACE: {
+                ModuleRecord m = modules.get(in.getInt());
+                double x = in.getDouble(), y = in.getDouble();
+                int orientation = in.getInt();
+                String label = readString(in);
+                int labelSize = in.getInt();
+
+                if (m != null) {
+                    m.x = x;
+                    m.y = y;
+                    m.orientation = orientation;
+                    m.label = null;
+                    if (m.data == null) {
+                        m.data = new HashMap<>();
+                    }
+                    m.data.put("label", label);
+                    m.data.put("label_size", Integer.toString(labelSize));
+                }
+                break;
+            }
+            case MODULE_DATA: {
+                ModuleRecord m = modules.get(in.getInt());
+                HashMap<String, String> data = readData(in);
+
+                if (m != null) {
+                    // The data map describes the memory contents, replacing any image from the base
+                    m.data = data;
+                    m.image = null;
+                }
+                break;
+            }
+            case MODULE_REMOVE:
+                removeModule(modules.remove(in.getInt()), links);
+                break;
+            case LINK_SET:
+            case LINK_REMOVE: {
+                int src = portID(modules.get(in.getInt()), in.getInt());
+                int targ = portID(modules.get(in.getInt()), in.getInt());
+
+                LinkRecord l = null;
+                if (type == LINK_SET) {
+                    l = new LinkRecord();
+                    l.src = src;
+                    l.targ = targ;
+                    l.pathType = in.get() != 0 ? XMLReader.STRAIGHT_TAG : XMLReader.BEZIER_TAG;
+                    l.ctrlPts = new double[in.getInt() * 2];
+                    for (int i = 0; i < l.ctrlPts.length; i++) l.ctrlPts[i] = in.getDouble();
+                }
+
+                // A port has at most one link, so any existing link at either end is replaced
+                Iterator<LinkRecord> it = links.iterator();
+                while (it.hasNext()) {
+                    LinkRecord r = it.next();
+                    if (r.src == src || r.targ == targ || r.src == targ || r.targ == src) {
+                        it.remove();
+                    }
+                }
+                if (l != null && src >= 0 && targ >= 0) {
+                    links.add(l);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    private static HashMap<String, String> readData(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 8) {
+            throw new IOException("Journal contains corrupt module data");
+        }
+
+        HashMap<String, String> data = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String k = readString(in);
+            data.put(k, readString(in));
+        }
+        return data;
+    }
+
+    private static int[] readPortIDs(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) {
+            throw new IOException("Journal contains a corrupt port list");
+        }
+
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.getInt();
+        }
+        return ids;
+    }
+
+    private static void removeModule(ModuleRecord m, List<LinkRecord> links) {
+        if (m == null) return;
+
+        Iterator<LinkRecord> it = links.iterator();
+        while (it.hasNext()) {
+            LinkRecord l = it.next();
+            if (hasPort(m, l.src) || hasPort(m, l.targ)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean hasPort(ModuleRecord m, int id) {
+        for (int i : m.inputIDs) if (i == id) return true;
+        for (int i : m.outputIDs) if (i == id) return true;
+        return false;
+    }
+
+    /**
+     * @return The stored ID of the port at the index among the module's input side then output side, or -1
+     */
+    private static int portID(ModuleRecord m, int index) {
+        if (m == null || index < 0) return -1;
+        if (index < m.inputIDs.length) return m.inputIDs[index];
+        index -= m.inputIDs.length;
+        return index < m.outputIDs.length ? m.outputIDs[index] : -1;
+    }
+
+    /**
+     * Reads the whole journal, waiting for queued writes first
+     */
+    private ByteBuffer readJournal() throws Exception {
+        writer.submit(() -> null).get();
+
+        ByteBuffer buf = ByteBuffer.allocate((int) channel.size());
+        channel.read(buf, 0);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Reads the next entry, verifying its checksum
+     * @return The entry's payload, or null at the end of the journal or at an incomplete entry
+     */
+    private static ByteBuffer nextFrame(ByteBuffer buf) {
+        if (buf.remaining() < 8) return null;
+
+        int length = buf.getInt();
+        int checksum = buf.getInt();
+        if (length < 0 || length > buf.remaining()) return null;
+
+        ByteBuffer payload = buf.slice();
+        payload.limit(length);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) return null;
+
+        buf.position(buf.position() + length);
+        return payload;
+    }
+
+    private static final class Header {
+        final int baseKind;
+        final String docPath;
+        final String basePath;
+        final long baseLength;
+        final long baseModified;
+
+        Header(ByteBuffer buf) throws IOException {
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+                throw new IOException("Not a design journal");
+            }
+            short version = buf.getShort();
+            if (version < MIN_VERSION || version > VERSION) {
+                throw new IOException("Unsupported journal version");
+            }
+            baseKind = buf.getShort();
+            docPath = readString(buf);
+            basePath = readString(buf);
+            baseLength = buf.getLong();
+            baseModified = buf.getLong();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Journal contains a corrupt string");
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,398 @@
+package com.modsim.util;
+
+import com.modsim.Main;
+import com.modsim.gui.view.View;
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.Link;
+import com.modsim.modules.NRAM;
+import com.modsim.modules.parts.Port;
+import com.modsim.modules.ports.BidirPort;
+import com.modsim.operations.Ops;
+import com.modsim.util.DesignData.LinkRecord;
+import com.modsim.util.DesignData.ModuleRecord;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Loads a design file in the background. The file is parsed, then its modules are created in parallel and wired
+ * together, all off the Swing thread. The current design is only replaced once loading has succeeded, so
+ * cancelling or failing leaves it untouched.
+ */
+public class DesignLoader extends SwingWorker<ResultData, Void> {
+
+    // Share of the progress bar given to each loading stage
+    private static final int PARSE_PROGRESS = 40;
+    private static final int CREATE_PROGRESS = 50;
+
+    private final File file;
+    private final ProgressMonitor monitor;
+
+    // Whether a design is being loaded - only one is loaded at a time, so loads can't race to replace the design
+    private static boolean loading = false;
+
+    /**
+     * Starts loading a design file in the background, showing a cancellable progress bar. Opening is disabled
+     * until the load finishes. Must be called on the Swing thread.
+     * @param file File to load
+     */
+    public static void open(File file) {
+        if (loading) {
+            System.err.println("Already loading a design - ignoring " + file.getPath());
+            return;
+        }
+
+        loading = true;
+        Ops.open.setEnabled(false);
+        new DesignLoader(file).execute();
+    }
+
+    private DesignLoader(File file) {
+        this.file = file;
+
+        monitor = new ProgressMonitor(Main.ui.frame, "Opening " + file.getName(), "Reading file", 0, 100);
+        monitor.setMillisToDecideToPopup(250);
+
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                monitor.setProgress((Integer) e.getNewValue());
+            }
+        });
+
+        // The monitor is polled as it doesn't notify on cancellation
+        Timer poll = new Timer(100, null);
+        poll.addActionListener(e -> {
+            if (isDone()) {
+                poll.stop();
+            }
+            else if (monitor.isCanceled()) {
+                cancel(true);
+                poll.stop();
+            }
+        });
+        poll.start();
+    }
+
+    @Override
+    protected ResultData doInBackground() throws Exception {
+        DesignData data;
+        if (BinaryReader.isBinary(file)) {
+            // Binary files are mapped rather than parsed, so there's little to report
+            data = BinaryReader.read(file);
+            setProgress(PARSE_PROGRESS);
+        }
+        else {
+            data = parseXML();
+        }
+
+        return build(data, true, this::isCancelled,
+                p -> setProgress(Math.min(99, PARSE_PROGRESS + p * CREATE_PROGRESS / 100)));
+    }
+
+    /**
+     * Parses the XML file, reporting progress as it is read
+     */
+    private DesignData parseXML() throws Exception {
+        final long length = Math.max(1, file.length());
+
+        try (InputStream in = new FilterInputStream(new BufferedInputStream(new FileInputStream(file))) {
+            private long read = 0;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                count(b < 0 ? 0 : 1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                count(n);
+                return n;
+            }
+
+            private void count(int n) throws InterruptedIOException {
+                if (isCancelled()) {
+                    throw new InterruptedIOException("Load cancelled");
+                }
+                if (n > 0) {
+                    read += n;
+                    setProgress((int) (PARSE_PROGRESS * Math.min(read, length) / length));
+                }
+            }
+        }) {
+            return XMLReader.parse(in);
+        }
+    }
+
+    @Override
+    protected void done() {
+        monitor.close();
+        loading = false;
+        Ops.open.setEnabled(true);
+
+        if (isCancelled()) {
+            System.out.println("Cancelled loading " + file.getPath());
+            return;
+        }
+
+        try {
+            ResultData result = get();
+            install(result);
+
+            // Save the file path
+            Main.sim.filePath = file.getPath();
+            Main.ui.updateTitle();
+            Main.opStack.resetModified();
+        }
+        catch (InterruptedException | CancellationException e) {
+            System.out.println("Cancelled loading " + file.getPath());
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            cause.printStackTrace();
+            JOptionPane.showMessageDialog(null,
+                    "Error while loading file " + file.getPath() + " : " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Creates the modules and links of a parsed design. Modules are created in parallel; IDs are then assigned
+     * and the links are wired up and checked for loops on the calling thread. Nothing is added to the
+     * simulation.
+     * @param data The parsed design
+     * @param keepIDs Whether the modules and ports keep their stored IDs, which is only safe when they replace
+     *                the whole design. Otherwise fresh IDs are reserved from the simulation.
+     * @param cancelled Polled to abandon the build
+     * @param progress Receives the percentage of modules created, or null
+     * @return The new modules and links
+     */
+    static ResultData build(DesignData data, boolean keepIDs, BooleanSupplier cancelled, IntConsumer progress) {
+        ResultData result = new ResultData();
+        result.camX = data.camX;
+        result.camY = data.camY;
+        result.zoom = data.zoom;
+
+        // Create the modules across all cores - this is where NRAM contents get decoded
+        final int count = data.modules.size();
+        final AtomicInteger created = new AtomicInteger();
+        BaseModule[] modules = IntStream.range(0, count).parallel().mapToObj(i -> {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+
+            BaseModule m = createModule(data.modules.get(i));
+
+            int done = created.incrementAndGet();
+            if (progress != null && (done & 63) == 0) {
+                progress.accept(done * 100 / count);
+            }
+            return m;
+        }).toArray(BaseModule[]::new);
+
+        // Assign IDs, indexing the ports under their stored IDs
+        int id = 0;
+        if (!keepIDs) {
+            int needed = count;
+            for (BaseModule m : modules) {
+                needed += m.ports.size();
+            }
+            id = Main.sim.reserveIDs(needed);
+        }
+        IntMap<Port> loadedPorts = new IntMap<>(count * 8);
+
+        for (int i = 0; i < count; i++) {
+            BaseModule m = modules[i];
+            ModuleRecord rec = data.modules.get(i);
+            m.ID = keepIDs ? rec.ID : id++;
+
+            List<Port> inputSide = getInputSide(m);
+            for (int j = 0; j < rec.inputIDs.length; j++) {
+                Port p = inputSide.get(j);
+                p.ID = keepIDs ? rec.inputIDs[j] : id++;
+                loadedPorts.put(rec.inputIDs[j], p);
+            }
+
+            List<Port> outputSide = getOutputSide(m);
+            for (int j = 0; j < rec.outputIDs.length; j++) {
+                Port p = outputSide.get(j);
+                p.ID = keepIDs ? rec.outputIDs[j] : id++;
+                loadedPorts.put(rec.outputIDs[j], p);
+            }
+
+            result.modules.add(m);
+        }
+
+        // Wire up the links
+        for (LinkRecord rec : data.links) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+
+            if (rec.src == rec.targ) {
+                System.err.println(
+                        "Warning: Link's source and target are the same (" + rec.src + "). Skipping link");
+                continue;
+            } else if (!loadedPorts.containsKey(rec.src) || !loadedPorts.containsKey(rec.targ)) {
+                continue;
+                // Link may simply have been to a module that wasn't copied
+            }
+
+            Link l = Link.bulkLink(loadedPorts.get(rec.src), loadedPorts.get(rec.targ), createPath(rec));
+
+            if (l != null) {
+                result.links.add(l);
+            } else {
+                result.badLinks++;
+            }
+        }
+
+        // All links are in place, so the whole graph can be checked for loops in one go
+        result.loopLinks = Link.findLoops(result.links).size();
+
+        return result;
+    }
+
+    /**
+     * Replaces the current design with a loaded one. Must be called on the Swing thread.
+     * @param result The loaded design
+     */
+    static void install(ResultData result) {
+        Main.sim.newSim();
+
+        Main.sim.addEntities(result.modules);
+        Main.sim.addLinks(result.links);
+
+        View v = Main.ui.view;
+        v.init_camX = v.camX = result.camX;
+        v.init_camY = v.camY = result.camY;
+        v.init_zoomI = v.zoomI = result.zoom;
+        v.zoom = View.ZOOM_MULTIPLIER * v.zoomI;
+        v.calcXForm();
+
+        // Settle the new modules' values across their links
+        Main.sim.settle(result.modules);
+
+        notifyBadLinks(result);
+        v.flagStaticRedraw();
+    }
+
+    /**
+     * Notifies the user of a partially corrupted file
+     */
+    static void notifyBadLinks(ResultData result) {
+        if (result.badLinks != 0) {
+            JOptionPane.showMessageDialog(null,
+                    "Detected " + result.badLinks + " bad links in the file. These were ignored.\n"
+                            + "A known bug in an older version of ModuleSim may have corrupted your file - "
+                            + "there may be other incorrect or missing links.");
+        }
+        if (result.loopLinks != 0) {
+            JOptionPane.showMessageDialog(null,
+                    "Detected " + result.loopLinks + " links in the file which would create loops. "
+                            + "These were ignored.\nHave you forgotten a register?");
+        }
+    }
+
+    /**
+     * Creates a single module from its record. Safe to call from any thread, as the module is not yet part of
+     * the simulation.
+     */
+    private static BaseModule createModule(ModuleRecord rec) {
+        BaseModule m = (BaseModule) rec.type.getSrcModule().createNew();
+
+        // Set the dimensions
+        m.pos.x = rec.x;
+        m.pos.y = rec.y;
+        m.orientation = rec.orientation;
+
+        // Set the label (legacy files only)
+        if (rec.label != null) {
+            m.label = rec.label;
+            m.labelSize = rec.labelSize;
+        }
+
+        // Load data map
+        m.dataIn(rec.data);
+
+        // Adopt raw memory contents, unless they're held in a backing file
+        if (rec.image != null && m instanceof NRAM && ((NRAM) m).getBackingFile() == null) {
+            ((NRAM) m).adoptImage(rec.image);
+        }
+
+        // Update module
+        m.propagate();
+        m.enabled = true;
+
+        return m;
+    }
+
+    /**
+     * Creates a link's path from its record
+     */
+    private static Path createPath(LinkRecord rec) {
+        Path curve;
+        if (XMLReader.STRAIGHT_TAG.equals(rec.pathType)) {
+            curve = new StraightPath();
+        } else {
+            curve = new BezierPath();
+        }
+
+        for (int i = 0; i + 1 < rec.ctrlPts.length; i += 2) {
+            curve.addPt(new CtrlPt(rec.ctrlPts[i], rec.ctrlPts[i + 1]));
+        }
+
+        return curve;
+    }
+
+    /**
+     * HAX: backwards-compatibility is fun for the whole family!
+     * Previous versions of the program made no real distinction between normal ports and the split-merge's
+     * bidirectional ports - they were stored in the input/output lists based on which side they were supposed
+     * to appear on. Now we have to deal with that by picking out the bidirectional ports and appending them to
+     * the input and output lists.
+     * @return The ports on the module's input side, in stored order
+     */
+    static List<Port> getInputSide(BaseModule m) {
+        List<Port> ports = new ArrayList<>(m.inputs);
+        for (BidirPort p : m.bidirs) {
+            if (p.side == 1) {
+                ports.add(p);
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * @return The ports on the module's output side, in stored order
+     * @see #getInputSide(BaseModule)
+     */
+    static List<Port> getOutputSide(BaseModule m) {
+        List<Port> ports = new ArrayList<>(m.outputs);
+        for (BidirPort p : m.bidirs) {
+            if (p.side != 1) {
+                ports.add(p);
+            }
+        }
+        return ports;
+    }
+}
@@ -0,0 +1,121 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import com.modsim.Main;
+import com.modsim.modules.NRAM;
+import com.modsim.simulator.Scene;
+
+/**
+ * Saves designs in the background. The design is captured from a snapshot of the simulation's lists as a single
+ * simulation command, then written out on a single saving thread, so simulation and editing carry on while large
+ * designs are saved. Each save is written alongside the target and then renamed over it, so an interrupted save
+ * never leaves a partly written design behind.
+ */
+public class DesignSaver {
+
+    // A single thread, so saves complete in the order they were made
+    private static final ExecutorService saver = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Design saver");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile boolean lastFailed = false;
+
+    /**
+     * Saves the current design, in the format given by the file's extension (.modsimb for binary, otherwise XML).
+     * Returns once the design has been captured; the Swing thread is notified when the file has been written, and
+     * only then takes it as the design's file, unless the design has since been replaced.
+     */
+    public static void save(File file) {
+        Scene scene = Main.sim.getScene();
+        final DesignData data;
+        try {
+            data = DesignData.capture(scene.modules, scene.links);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Unable to save " + file.getPath() + ": " + e.getMessage());
+            return;
+        }
+        final int edits = Main.opStack.getEditCount();
+        final int generation = Main.sim.getGeneration();
+
+        saver.execute(() -> {
+            try {
+                write(file, data);
+                NRAM.flushBackingFiles(scene.modules);
+                lastFailed = false;
+
+                SwingUtilities.invokeLater(() -> {
+                    System.out.println("Saved simulation to " + file.getAbsolutePath());
+
+                    // The design may have been replaced (e.g. after saving from checkSave) while it was written
+                    if (generation != Main.sim.getGeneration()) return;
+
+                    Main.sim.filePath = file.getPath();
+                    Main.ui.updateTitle();
+                    Main.opStack.saved(edits);
+                });
+            }
+            catch (Exception e) {
+                lastFailed = true;
+                e.printStackTrace();
+
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null,
+                        "Unable to save " + file.getPath() + ": " + e.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Writes the captured design to a temporary file, then renames it over the target
+     */
+    private static void write(File file, DesignData data) throws Exception {
+        File temp = new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".saving");
+
+        try {
+            if (file.getName().endsWith(".modsimb")) {
+                BinaryWriter.write(temp, data);
+            }
+            else {
+                XMLWriter.write(temp, data);
+            }
+
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Waits for saves in progress to finish. Called before exiting.
+     * @return True if the last save succeeded (or there was none)
+     */
+    public static boolean awaitPending() {
+        try {
+            saver.submit(() -> {}).get(30, TimeUnit.SECONDS);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return !lastFailed;
+    }
+}
@@ -0,0 +1,198 @@
+package com.modsim.util;
+
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+
+/**
+ * A path flattened to a polyline, for hit-testing. Each of the path's curves is split into straight segments at
+ * evenly spaced t. Curves and runs of segments within them are boxed, so that queries skip parts of the path too
+ * far away to matter.
+ */
+final class FlatPath {
+
+    // Curves are split finely enough that the polyline stays within this distance of them
+    private static final double TOLERANCE = 0.25;
+    private static final int MAX_STEPS = 256;
+
+    // Segments per boxed run
+    private static final int RUN = 8;
+
+    // Vertices, and the t of each within its curve
+    private double[] xs = new double[32], ys = new double[32], ts = new double[32];
+    private int count = 0;
+
+    // Index of each curve's first vertex, and each curve's bounds (min x, min y, max x, max y)
+    private int[] curveStart = new int[8];
+    private double[] bounds = new double[32];
+    private int curves = 0;
+
+    // Bounds of each run of segments, indexed by the run's first vertex / RUN
+    private double[] runBounds = new double[16];
+
+    /**
+     * Adds a cubic curve, split into as many segments as are needed for it to look straight
+     */
+    void addCubic(CubicCurve2D c) {
+        double x0 = c.getX1(), y0 = c.getY1(), x1 = c.getCtrlX1(), y1 = c.getCtrlY1();
+        double x2 = c.getCtrlX2(), y2 = c.getCtrlY2(), x3 = c.getX2(), y3 = c.getY2();
+
+        // Evenly spaced steps stray from the curve by at most 3/4 of its largest second difference over steps^2
+        double dd = Math.max(Math.hypot(x0 - 2 * x1 + x2, y0 - 2 * y1 + y2),
+                Math.hypot(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+        int steps = (int) Math.ceil(Math.sqrt(0.75 * dd / TOLERANCE));
+        steps = Math.max(1, Math.min(MAX_STEPS, steps));
+
+        beginCurve();
+        for (int i = 0; i <= steps; i++) {
+            double t = (double) i / steps;
+            double u = 1 - t;
+            double a = u * u * u, b = 3 * u * u * t, d = 3 * u * t * t, e = t * t * t;
+            addVertex(a * x0 + b * x1 + d * x2 + e * x3, a * y0 + b * y1 + d * y2 + e * y3, t);
+        }
+    }
+
+    void addLine(Line2D l) {
+        beginCurve();
+        addVertex(l.getX1(), l.getY1(), 0);
+        addVertex(l.getX2(), l.getY2(), 1);
+    }
+
+    private void beginCurve() {
+        if (curves + 1 >= curveStart.length) {
+            curveStart = Arrays.copyOf(curveStart, curveStart.length * 2);
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+
+        curveStart[curves] = count;
+        curveStart[curves + 1] = count;
+        bounds[curves * 4] = bounds[curves * 4 + 1] = Double.POSITIVE_INFINITY;
+        bounds[curves * 4 + 2] = bounds[curves * 4 + 3] = Double.NEGATIVE_INFINITY;
+        curves++;
+    }
+
+    private void addVertex(double x, double y, double t) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            ts = Arrays.copyOf(ts, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        ts[count] = t;
+        count++;
+
+        include(bounds, curves - 1, x, y, false);
+        curveStart[curves] = count;
+
+        // Runs are aligned within the whole vertex list, so may span curves (but are only searched within one)
+        int run = (count - 1) / RUN;
+        if (run * 4 + 4 > runBounds.length) {
+            runBounds = Arrays.copyOf(runBounds, runBounds.length * 2);
+        }
+        boolean first = (count - 1) % RUN == 0;
+        include(runBounds, run, x, y, first);
+
+        // A run's last segment ends at the next run's first vertex
+        if (first && run > 0) {
+            include(runBounds, run - 1, x, y, false);
+        }
+    }
+
+    private static void include(double[] b, int i, double x, double y, boolean first) {
+        i *= 4;
+        if (first) {
+            b[i] = b[i + 2] = x;
+            b[i + 1] = b[i + 3] = y;
+        }
+        else {
+            b[i] = Math.min(b[i], x);
+            b[i + 1] = Math.min(b[i + 1], y);
+            b[i + 2] = Math.max(b[i + 2], x);
+            b[i + 3] = Math.max(b[i + 3], y);
+        }
+    }
+
+    /**
+     * Gets the squared distance from a point to one of the boxes in a bounds array
+     */
+    private static double distSq(double[] b, int i, double px, double py) {
+        i *= 4;
+        double dx = Math.max(0, Math.max(b[i] - px, px - b[i + 2]));
+        double dy = Math.max(0, Math.max(b[i + 1] - py, py - b[i + 3]));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Finds the segment nearest a point
+     * @param maxDist Segments further away than this are ignored
+     * @return The index of the segment's first vertex, or -1 if no segment is within maxDist
+     */
+    int nearestSegment(double px, double py, double maxDist) {
+        double bestSq = maxDist * maxDist;
+        int best = -1;
+
+        for (int c = 0; c < curves; c++) {
+            if (distSq(bounds, c, px, py) > bestSq) {
+                continue;
+            }
+
+            int end = curveStart[c + 1] - 1;
+            for (int start = curveStart[c]; start < end; start = (start / RUN + 1) * RUN) {
+                if (distSq(runBounds, start / RUN, px, py) > bestSq) {
+                    continue;
+                }
+
+                int runEnd = Math.min(end, (start / RUN + 1) * RUN);
+                for (int i = start; i < runEnd; i++) {
+                    double u = project(i, px, py);
+                    double ex = xs[i] + u * (xs[i + 1] - xs[i]) - px;
+                    double ey = ys[i] + u * (ys[i + 1] - ys[i]) - py;
+                    double dSq = ex * ex + ey * ey;
+                    if (dSq < bestSq) {
+                        bestSq = dSq;
+                        best = i;
+                    }
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets how far along a segment (from 0 to 1) the point nearest to the given point is
+     * @param i Index of the segment's first vertex
+     */
+    double project(int i, double px, double py) {
+        double sx = xs[i + 1] - xs[i], sy = ys[i + 1] - ys[i];
+        double lenSq = sx * sx + sy * sy;
+        if (lenSq == 0) {
+            return 0;
+        }
+        double u = ((px - xs[i]) * sx + (py - ys[i]) * sy) / lenSq;
+        return Math.max(0, Math.min(1, u));
+    }
+
+    double x(int i, double u) {
+        return xs[i] + u * (xs[i + 1] - xs[i]);
+    }
+
+    double y(int i, double u) {
+        return ys[i] + u * (ys[i + 1] - ys[i]);
+    }
+
+    double t(int i, double u) {
+        return ts[i] + u * (ts[i + 1] - ts[i]);
+    }
+
+    /**
+     * Gets the index of the curve a segment belongs to
+     * @param i Index of the segment's first vertex
+     */
+    int curveOf(int i) {
+        // Every curve has at least two vertices, so curves start at distinct vertices
+        int c = Arrays.binarySearch(curveStart, 0, curves, i);
+        return c >= 0 ? c : -c - 2;
+    }
+}
@@ -1,8 +1,12 @@
 package com.modsim.util;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import javax.swing.JOptionPane;
 
@@ -11,6 +15,11 @@ import com.modsim.Main;
 
 public class HexReader {
 
+    private static final int BUFFER_SIZE = 0x10000;
+
+    // Longest token accepted - a repeat count, an 'x' and two hex digits
+    private static final int MAX_TOKEN = 16;
+
     /**
      * Reads a hex format file
      */
@@ -21,18 +30,17 @@ public class HexReader {
         }
 
         try {
-            nram.clear();
-            BufferedReader in = new BufferedReader(new FileReader(hexFile));
-
-            // Read in the full file
-            String line;
-            String file = "";
-            while ((line = in.readLine()) != null) {
-                file += line + " ";
-            }
-            in.close();
+            // Loaded as a simulation command, so memory doesn't change under a running simulation
+            Main.sim.submitAndWait(() -> {
+                try (FileChannel in = FileChannel.open(hexFile.toPath(), StandardOpenOption.READ)) {
+                    nram.clear();
+                    read(in, nram);
+                }
 
-            readString(file, nram);
+                // Propagate change
+                Main.sim.propagate(nram);
+                return null;
+            });
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -42,42 +50,138 @@ public class HexReader {
 
     public static void readString(String store, NRAM nram) {
         try {
-            String[] chopped = store.split("( |\t)+");
-
-            int adr = 0;
-            for (String s : chopped) {
-                // Skip isEmpty strings
-                if (s.equals("")) continue;
-
-                // Multiple entries
-                int rpt = 1;
-                if (s.contains("x")) {
-                    String[] pair = s.split("x");
-                    rpt = Integer.parseInt(pair[0]);
-                    s = pair[1];
-                }
+            Main.sim.submitAndWait(() -> {
+                loadString(store, nram);
+
+                // Propagate change
+                Main.sim.propagate(nram);
+                return null;
+            });
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Invalid hex string: "+e.getMessage());
+        }
+    }
 
-                // Flag invalid formatting
-                if (s.length() != 2) {
-                    throw new Exception("File load requires hex codes 2 digits long");
+    /**
+     * Loads a hex string into the NRAM without propagating the change, so that modules can be loaded before they
+     * are part of the simulation (and off the Swing thread)
+     * @throws Exception If the string is not valid hex
+     */
+    public static void loadString(String store, NRAM nram) throws Exception {
+        Tokenizer t = new Tokenizer(nram);
+        t.feed(ByteBuffer.wrap(store.getBytes(StandardCharsets.ISO_8859_1)));
+        t.finish();
+    }
+
+    /**
+     * Streams hex data into the NRAM, without propagating the change. Entries are two-digit hex bytes, optionally
+     * prefixed by a decimal repeat count and an 'x' (e.g. "16x00"), separated by any whitespace.
+     * @param in Channel to read until exhausted
+     * @throws IOException If the channel can't be read or the data is not valid hex
+     */
+    public static void read(ReadableByteChannel in, NRAM nram) throws IOException {
+        Tokenizer t = new Tokenizer(nram);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (in.read(buf) >= 0) {
+            buf.flip();
+            t.feed(buf);
+            buf.clear();
+        }
+        t.finish();
+    }
+
+    /**
+     * Splits the stream into entries as it arrives, writing each straight into the NRAM's store
+     */
+    private static final class Tokenizer {
+        private final NRAM nram;
+        private final byte[] token = new byte[MAX_TOKEN];
+        private int length = 0;
+        private int adr = 0;
+
+        Tokenizer(NRAM nram) {
+            this.nram = nram;
+        }
+
+        void feed(ByteBuffer buf) throws IOException {
+            while (buf.hasRemaining()) {
+                byte c = buf.get();
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+                    if (length != 0) {
+                        entry();
+                    }
+                }
+                else if (length == MAX_TOKEN) {
+                    throw new IOException("File load requires hex codes 2 digits long");
                 }
+                else {
+                    token[length++] = c;
+                }
+            }
+        }
 
-                int n1 = Integer.parseInt(s.substring(0, 1), 16);
-                int n2 = Integer.parseInt(s.substring(1), 16);
+        void finish() throws IOException {
+            if (length != 0) {
+                entry();
+            }
+            if (adr > NRAM.MAX_ADDR + 1) {
+                System.err.println("Warning: hex data runs past the end of NRAM, "
+                        + (adr - NRAM.MAX_ADDR - 1) + " bytes were ignored");
+            }
+        }
 
-                // Support repeated entries
-                for (int i = 0; i < rpt; i++) {
-                    nram.write(adr, new BinData(n2), new BinData(n1));
-                    adr++;
+        private void entry() throws IOException {
+            // Multiple entries
+            int rpt = 1;
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (token[i] == 'x') {
+                    rpt = parseCount(i);
+                    start = i + 1;
+                    break;
                 }
             }
 
-            // Propagate change
-            Main.sim.propagate(nram);
+            // Flag invalid formatting
+            if (length - start != 2) {
+                throw new IOException("File load requires hex codes 2 digits long");
+            }
+            int val = (hexDigit(token[start]) << 4) | hexDigit(token[start + 1]);
+            length = 0;
+
+            // Support repeated entries
+            int end = (int) Math.min((long) adr + rpt, NRAM.MAX_ADDR + 1);
+            for (int a = adr; a < end; a++) {
+                nram.setByte(a, val);
+            }
+            adr = (int) Math.min((long) adr + rpt, Integer.MAX_VALUE);
         }
-        catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(null, "Invalid hex string: "+e.getMessage());
+
+        private int parseCount(int end) throws IOException {
+            if (end == 0) {
+                throw new IOException("Missing repeat count");
+            }
+
+            long n = 0;
+            for (int i = 0; i < end; i++) {
+                int d = token[i] - '0';
+                if (d < 0 || d > 9) {
+                    throw new IOException(
+                            "Invalid repeat count: " + new String(token, 0, end, StandardCharsets.ISO_8859_1));
+                }
+                n = Math.min(n * 10 + d, Integer.MAX_VALUE);
+            }
+            return (int) n;
+        }
+
+        private static int hexDigit(byte c) throws IOException {
+            if (c >= '0' && c <= '9') return c - '0';
+            if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+            if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+            throw new IOException("Invalid hex digit '" + (char) c + "'");
         }
     }
 
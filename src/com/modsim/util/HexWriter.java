@@ -1,6 +1,12 @@
 package com.modsim.util;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 import javax.swing.JOptionPane;
 
@@ -8,6 +14,13 @@ import com.modsim.modules.NRAM;
 
 public class HexWriter {
 
+    private static final int BUFFER_SIZE = 0x10000;
+
+    // Longest entry written - a 5-digit repeat count, an 'x', two hex digits, a tab and a newline
+    private static final int MAX_ENTRY = 10;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+
     /**
      * Writes a hex format file
      */
@@ -17,10 +30,9 @@ public class HexWriter {
             return;
         }
 
-        try {
-            BufferedWriter out = new BufferedWriter(new FileWriter(hexFile));
-            out.write(hexString(nram, true));
-            out.close();
+        try (FileChannel out = FileChannel.open(hexFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(out, nram, true);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -39,52 +51,9 @@ public class HexWriter {
         }
 
         try {
-            StringWriter out = new StringWriter();
-
-            int adr, entries = 0;
-            for (adr = 0; adr <= NRAM.MAX_ADDR; adr++) {
-                int val, newVal;
-                int num = 0;
-                int seekAdr = adr;
-
-                BinData[] bits = nram.read(adr);
-                newVal = bits[0].getUInt() | (bits[1].getUInt() << 4);
-
-                // Seek out repeated bytes
-                do {
-                    seekAdr++;
-                    val = newVal;
-
-                    if (seekAdr <= NRAM.MAX_ADDR) {
-                        bits = nram.read(seekAdr);
-                        newVal = bits[0].getUInt() | (bits[1].getUInt() << 4);
-                    }
-                    else newVal = 0;
-
-                    num++;
-                } while (newVal == val && seekAdr < NRAM.MAX_ADDR);
-                adr = seekAdr - 1;
-
-                if (seekAdr == NRAM.MAX_ADDR && val == 0) {
-                    continue; // No point writing trailing zeroes
-                }
-
-                // Combination of multiple bytes into one entry
-                if (num > 1) {
-                    out.write("" + num + "x");
-                }
-
-                // The byte value in hex format
-                out.write(String.format("%02x\t", val));
-                entries++;
-
-                if (splitLines && entries % 8 == 0) {
-                    out.write("\n");
-                }
-            }
-
-            out.close();
-            return out.getBuffer().toString();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(Channels.newChannel(out), nram, splitLines);
+            return new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
         }
         catch (Exception e) {
             e.printStackTrace();
@@ -93,4 +62,78 @@ public class HexWriter {
         }
     }
 
+    /**
+     * Streams the NRAM's contents as hex data. Runs of repeated bytes are written as a single entry with a repeat
+     * count (e.g. "16x00"), and trailing zeroes are left out entirely.
+     * @param out Channel to write to
+     * @param splitLines Whether to start a new line every 8 entries
+     */
+    public static void write(WritableByteChannel out, NRAM nram, boolean splitLines) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        // No point writing trailing zeroes
+        int end = NRAM.MAX_ADDR + 1;
+        while (end > 0 && nram.getByte(end - 1) == 0) {
+            end--;
+        }
+
+        int entries = 0;
+        int adr = 0;
+        while (adr < end) {
+            // Seek out repeated bytes
+            int val = nram.getByte(adr);
+            int seekAdr = adr + 1;
+            while (seekAdr < end && nram.getByte(seekAdr) == val) {
+                seekAdr++;
+            }
+            int num = seekAdr - adr;
+            adr = seekAdr;
+
+            if (buf.remaining() < MAX_ENTRY) {
+                flush(out, buf);
+            }
+
+            // Combination of multiple bytes into one entry
+            if (num > 1) {
+                putDecimal(buf, num);
+                buf.put((byte) 'x');
+            }
+
+            // The byte value in hex format
+            buf.put(HEX_DIGITS[val >> 4]);
+            buf.put(HEX_DIGITS[val & 0xF]);
+            buf.put((byte) '\t');
+            entries++;
+
+            if (splitLines && entries % 8 == 0) {
+                buf.put((byte) '\n');
+            }
+        }
+
+        flush(out, buf);
+    }
+
+    private static void putDecimal(ByteBuffer buf, int n) {
+        int start = buf.position();
+        do {
+            buf.put((byte) ('0' + n % 10));
+            n /= 10;
+        } while (n != 0);
+
+        // Digits were written least significant first
+        for (int i = start, j = buf.position() - 1; i < j; i++, j--) {
+            byte t = buf.get(i);
+            buf.put(i, buf.get(j));
+            buf.put(j, t);
+        }
+    }
+
+    private static void flush(WritableByteChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+
 }
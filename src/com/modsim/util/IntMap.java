@@ -0,0 +1,111 @@
+package com.modsim.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash map from primitive int keys to objects, used for ID lookups while loading designs
+ * without boxing every key.
+ */
+public final class IntMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public IntMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a map sized to hold the given number of entries without resizing
+     * @param expected Expected number of entries
+     */
+    public IntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new int[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Maps the key to the given value, replacing any existing mapping
+     * @return The previous value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntMap does not store null values");
+        }
+
+        int i = slot(key);
+        V old = (V) values[i];
+        if (old == null) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+
+        if (size > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+        return old;
+    }
+
+    /**
+     * @return The value mapped to the key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return (V) values[slot(key)];
+    }
+
+    public boolean containsKey(int key) {
+        return values[slot(key)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Finds the slot holding the key, or the empty slot it would be inserted at
+     */
+    private int slot(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads sequential IDs across the table
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,151 @@
+package com.modsim.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.NRAM;
+import com.modsim.Main;
+
+/**
+ * Loads Intel HEX images into NRAM
+ */
+public class IntelHexReader {
+
+    private static final int DATA = 0x00;
+    private static final int END_OF_FILE = 0x01;
+    private static final int EXTENDED_SEGMENT_ADDRESS = 0x02;
+    private static final int START_SEGMENT_ADDRESS = 0x03;
+    private static final int EXTENDED_LINEAR_ADDRESS = 0x04;
+    private static final int START_LINEAR_ADDRESS = 0x05;
+
+    /**
+     * Reads an Intel HEX file into the NRAM, leaving memory outside the image's records untouched
+     * @param offset Added to every record's address
+     */
+    public static void readFile(File hexFile, NRAM nram, int offset) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try {
+            // Loaded as a simulation command, so memory doesn't change under a running simulation
+            int ignored = Main.sim.submitAndWait(() -> {
+                int n;
+                try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                        Files.newInputStream(hexFile.toPath()), StandardCharsets.ISO_8859_1))) {
+                    n = read(in, nram, offset);
+                }
+
+                // Propagate change
+                Main.sim.propagate(nram);
+                return n;
+            });
+
+            if (ignored > 0) {
+                JOptionPane.showMessageDialog(null, "The image runs past the end of memory - "
+                        + ignored + " bytes were not loaded.");
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Unable to read Intel HEX file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads Intel HEX records into the NRAM, without propagating the change. Every record's checksum is verified.
+     * @param offset Added to every record's address
+     * @return The number of bytes which fell outside memory
+     * @throws IOException If the data can't be read or is not a valid Intel HEX image
+     */
+    public static int read(BufferedReader in, NRAM nram, int offset) throws IOException {
+        int base = 0;
+        int ignored = 0;
+        int lineNum = 0;
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNum++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+
+            byte[] rec = parseRecord(line, lineNum);
+            int count = rec[0] & 0xFF;
+            int address = ((rec[1] & 0xFF) << 8) | (rec[2] & 0xFF);
+            int type = rec[3] & 0xFF;
+
+            switch (type) {
+                case DATA:
+                    long start = (long) base + address + offset;
+                    int stored = 0;
+                    if (start >= 0 && start <= NRAM.MAX_ADDR) {
+                        stored = nram.putBytes((int) start, ByteBuffer.wrap(rec, 4, count));
+                    }
+                    ignored += count - stored;
+                    break;
+                case END_OF_FILE:
+                    return ignored;
+                case EXTENDED_SEGMENT_ADDRESS:
+                case EXTENDED_LINEAR_ADDRESS:
+                    if (count != 2) {
+                        throw new IOException("Bad address record on line " + lineNum);
+                    }
+                    int upper = ((rec[4] & 0xFF) << 8) | (rec[5] & 0xFF);
+                    base = type == EXTENDED_SEGMENT_ADDRESS ? upper << 4 : upper << 16;
+                    break;
+                case START_SEGMENT_ADDRESS:
+                case START_LINEAR_ADDRESS:
+                    // Entry points mean nothing to NRAM
+                    break;
+                default:
+                    throw new IOException("Unknown record type " + type + " on line " + lineNum);
+            }
+        }
+
+        return ignored;
+    }
+
+    /**
+     * Decodes a record's bytes - count, address, type, data and checksum - checking its length and checksum
+     */
+    private static byte[] parseRecord(String line, int lineNum) throws IOException {
+        if (line.charAt(0) != ':') {
+            throw new IOException("Line " + lineNum + " is not an Intel HEX record");
+        }
+
+        int digits = line.length() - 1;
+        if (digits < 10 || digits % 2 != 0) {
+            throw new IOException("Line " + lineNum + " is too short");
+        }
+
+        byte[] rec = new byte[digits / 2];
+        int sum = 0;
+        for (int i = 0; i < rec.length; i++) {
+            int hi = Character.digit(line.charAt(1 + i * 2), 16);
+            int lo = Character.digit(line.charAt(2 + i * 2), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IOException("Invalid hex digit on line " + lineNum);
+            }
+            rec[i] = (byte) ((hi << 4) | lo);
+            sum += rec[i];
+        }
+
+        if ((rec[0] & 0xFF) + 5 != rec.length) {
+            throw new IOException("Line " + lineNum + " has the wrong length for its byte count");
+        }
+        if ((sum & 0xFF) != 0) {
+            throw new IOException("Checksum error on line " + lineNum);
+        }
+
+        return rec;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.modsim.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.NRAM;
+
+/**
+ * Saves NRAM contents as an Intel HEX image
+ */
+public class IntelHexWriter {
+
+    private static final int RECORD_BYTES = 16;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Writes an Intel HEX file
+     */
+    public static void writeFile(File hexFile, NRAM nram) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(hexFile.toPath()), StandardCharsets.ISO_8859_1))) {
+            write(out, nram);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Intel HEX file IO failure: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the NRAM's contents as data records of up to 16 bytes, followed by an end-of-file record. Memory
+     * fits in 16-bit addresses, so no extended address records are needed. Trailing zeroes are left out.
+     */
+    public static void write(Writer out, NRAM nram) throws IOException {
+        int end = NRAM.MAX_ADDR + 1;
+        while (end > 0 && nram.getByte(end - 1) == 0) {
+            end--;
+        }
+
+        char[] line = new char[11 + RECORD_BYTES * 2];
+        for (int adr = 0; adr < end; adr += RECORD_BYTES) {
+            int count = Math.min(RECORD_BYTES, end - adr);
+
+            line[0] = ':';
+            int sum = putByte(line, 1, count);
+            sum += putByte(line, 3, adr >> 8);
+            sum += putByte(line, 5, adr & 0xFF);
+            sum += putByte(line, 7, 0x00);
+
+            int pos = 9;
+            for (int i = 0; i < count; i++) {
+                sum += putByte(line, pos, nram.getByte(adr + i));
+                pos += 2;
+            }
+            putByte(line, pos, -sum & 0xFF);
+
+            out.write(line, 0, pos + 2);
+            out.write('\n');
+        }
+
+        out.write(":00000001FF\n");
+    }
+
+    /**
+     * Writes a byte as two hex digits
+     * @return The byte, for the checksum
+     */
+    private static int putByte(char[] line, int pos, int b) {
+        line[pos] = HEX_DIGITS[(b >> 4) & 0xF];
+        line[pos + 1] = HEX_DIGITS[b & 0xF];
+        return b;
+    }
+
+}
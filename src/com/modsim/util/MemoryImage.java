@@ -0,0 +1,137 @@
+package com.modsim.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes NRAM memory images as deflate-compressed base64 text, for storing inline in design files. Recently
+ * encoded and decoded images are cached by content, so identical memories - across NRAMs, saves or pastes - are
+ * only compressed or decompressed once.
+ */
+public final class MemoryImage {
+
+    private static final int CACHE_SIZE = 32;
+
+    // Content digest -> encoded text
+    private static final Map<String, String> encoded = lruCache();
+
+    // Encoded text -> raw image
+    private static final Map<String, byte[]> decoded = lruCache();
+
+    private MemoryImage() {}
+
+    /**
+     * Compresses and encodes a raw memory image
+     * @param image The image, from its position to its limit
+     * @return Base64 text of the deflated image
+     */
+    public static String encode(ByteBuffer image) {
+        byte[] raw = new byte[image.remaining()];
+        image.duplicate().get(raw);
+
+        String key = digest(raw);
+        synchronized (encoded) {
+            String text = encoded.get(key);
+            if (text != null) {
+                return text;
+            }
+        }
+
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+
+        String text = Base64.getEncoder().encodeToString(out.toByteArray());
+        synchronized (encoded) {
+            encoded.put(key, text);
+        }
+        return text;
+    }
+
+    /**
+     * Decodes and decompresses a memory image
+     * @param text Base64 text produced by encode
+     * @param size Expected size of the raw image
+     * @return A new buffer holding the raw image
+     * @throws DataFormatException If the text doesn't hold an image of the expected size
+     */
+    public static ByteBuffer decode(String text, int size) throws DataFormatException {
+        byte[] raw;
+        synchronized (decoded) {
+            raw = decoded.get(text);
+        }
+
+        if (raw == null) {
+            byte[] compressed;
+            try {
+                compressed = Base64.getDecoder().decode(text);
+            }
+            catch (IllegalArgumentException e) {
+                throw new DataFormatException("Memory image is not valid base64");
+            }
+
+            Inflater inflater = new Inflater();
+            inflater.setInput(compressed);
+            // One spare byte, to detect oversized images
+            raw = new byte[size + 1];
+            int length = 0;
+            try {
+                while (length <= size && !inflater.finished()) {
+                    int n = inflater.inflate(raw, length, size + 1 - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += n;
+                }
+                if (length != size || !inflater.finished()) {
+                    throw new DataFormatException("Memory image is not " + size + " bytes long");
+                }
+                raw = Arrays.copyOf(raw, size);
+            }
+            finally {
+                inflater.end();
+            }
+
+            synchronized (decoded) {
+                decoded.put(text, raw);
+            }
+        }
+
+        // The cached copy must not be shared, as the memory will be written to
+        return ByteBuffer.wrap(raw.clone());
+    }
+
+    private static String digest(byte[] raw) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(raw));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <V> Map<String, V> lruCache() {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+}
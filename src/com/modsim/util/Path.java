@@ -1,6 +1,7 @@
 package com.modsim.util;
 
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,7 +23,61 @@ public abstract class Path {
 
 	protected ArrayList<CtrlPt> ctrlPts = new ArrayList<>();
 
-    public abstract PointInfo approxClosestPoint(Vec2 searchPt, int iterations);
+    // Flattened copy of the path for hit-testing, made when first needed after the path changes
+    private FlatPath flat = null;
+
+    /**
+     * Finds the point on the path closest to the given point
+     */
+    public PointInfo closestPoint(Vec2 searchPt) {
+        FlatPath f = getFlat();
+        int seg = f.nearestSegment(searchPt.x, searchPt.y, Double.POSITIVE_INFINITY);
+
+        PointInfo pInfo = new PointInfo();
+        double u = f.project(seg, searchPt.x, searchPt.y);
+        pInfo.pt = new Vec2(f.x(seg, u), f.y(seg, u));
+        pInfo.dist = pInfo.pt.dist(searchPt);
+        pInfo.curveIndex = f.curveOf(seg);
+        pInfo.t = f.t(seg, u);
+        return pInfo;
+    }
+
+    /**
+     * Finds how far the given point is from the path
+     * @param maxDist Distance beyond which the path is not of interest
+     * @return The distance, or infinity if it is more than maxDist
+     */
+    public double distanceTo(Vec2 pt, double maxDist) {
+        FlatPath f = getFlat();
+        int seg = f.nearestSegment(pt.x, pt.y, maxDist);
+        if (seg < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double u = f.project(seg, pt.x, pt.y);
+        return Math.hypot(f.x(seg, u) - pt.x, f.y(seg, u) - pt.y);
+    }
+
+    private FlatPath getFlat() {
+        if (flat == null) {
+            flat = new FlatPath();
+            flatten(flat);
+        }
+        return flat;
+    }
+
+    /**
+     * Adds each of the path's curves to the flattened copy, in order
+     */
+    protected abstract void flatten(FlatPath f);
+
+    /**
+     * Drops the flattened copy - called whenever the curves change
+     */
+    protected void geometryChanged() {
+        flat = null;
+    }
+
     public abstract CtrlPt closestCtrlPt(Vec2 searchPt);
 
     public abstract Path duplicate();
@@ -33,6 +88,17 @@ public abstract class Path {
 
     public abstract void draw(Graphics2D g);
 
+    /**
+     * Draws the path as straight lines between its control points, for when it is too small on screen for
+     * curves and control points to be seen
+     */
+    public abstract void drawSimplified(Graphics2D g);
+
+    /**
+     * Gets the world-space area the path covers
+     */
+    public abstract Rectangle2D getBounds();
+
     public abstract List<CtrlPt> getCtrlPts();
 
     public abstract void setStart(Vec2 end);
@@ -0,0 +1,70 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.NRAM;
+import com.modsim.Main;
+
+/**
+ * Loads flat binary images into NRAM, one byte per address
+ */
+public class RawReader {
+
+    /**
+     * Reads a raw binary file into the NRAM, leaving memory outside the image untouched
+     * @param offset Address to load the first byte at
+     */
+    public static void readFile(File rawFile, NRAM nram, int offset) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try {
+            // Loaded as a simulation command, so memory doesn't change under a running simulation
+            int ignored = Main.sim.submitAndWait(() -> {
+                int n = read(rawFile, nram, offset);
+
+                // Propagate change
+                Main.sim.propagate(nram);
+                return n;
+            });
+
+            if (ignored > 0) {
+                JOptionPane.showMessageDialog(null, "The image runs past the end of memory - the last "
+                        + ignored + " bytes were not loaded.");
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Unable to read binary file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Maps a raw binary file and copies it into the NRAM, without propagating the change
+     * @param offset Address to load the first byte at
+     * @return The number of bytes which didn't fit in memory
+     */
+    public static int read(File rawFile, NRAM nram, int offset) throws IOException {
+        if (offset < 0 || offset > NRAM.MAX_ADDR) {
+            throw new IOException("Load address " + Integer.toHexString(offset) + " is outside memory");
+        }
+
+        try (FileChannel in = FileChannel.open(rawFile.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long mapped = Math.min(size, NRAM.MAX_ADDR + 1 - offset);
+            ByteBuffer image = in.map(FileChannel.MapMode.READ_ONLY, 0, mapped);
+
+            nram.putBytes(offset, image);
+            return (int) Math.min(size - mapped, Integer.MAX_VALUE);
+        }
+    }
+
+}
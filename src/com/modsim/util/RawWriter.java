@@ -0,0 +1,54 @@
+package com.modsim.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.swing.JOptionPane;
+
+import com.modsim.modules.NRAM;
+
+/**
+ * Saves NRAM contents as a flat binary image, one byte per address
+ */
+public class RawWriter {
+
+    /**
+     * Writes the whole of memory to a raw binary file
+     */
+    public static void writeFile(File rawFile, NRAM nram) {
+        if (nram == null) {
+            JOptionPane.showMessageDialog(null, "No NRAM module present");
+            return;
+        }
+
+        try {
+            write(rawFile, nram);
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(null, "Binary file IO failure: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the whole of memory to a raw binary file
+     */
+    public static void write(File rawFile, NRAM nram) throws IOException {
+        ByteBuffer image = ByteBuffer.allocate(NRAM.MAX_ADDR + 1);
+        for (int adr = 0; adr <= NRAM.MAX_ADDR; adr++) {
+            image.put((byte) nram.getByte(adr));
+        }
+        image.flip();
+
+        try (FileChannel out = FileChannel.open(rawFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (image.hasRemaining()) {
+                out.write(image);
+            }
+        }
+    }
+
+}
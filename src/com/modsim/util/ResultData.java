@@ -0,0 +1,28 @@
+package com.modsim.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.modsim.modules.BaseModule;
+import com.modsim.modules.Link;
+
+/**
+ * Modules and links loaded from a design, before they are added to the simulation
+ */
+final class ResultData {
+    public List<BaseModule> modules;
+    public List<Link> links;
+    public int badLinks;
+    public int loopLinks;
+
+    public double camX;
+    public double camY;
+    public int zoom;
+
+    public ResultData() {
+        modules = new ArrayList<BaseModule>();
+        links = new ArrayList<Link>();
+        badLinks = 0;
+        loopLinks = 0;
+    }
+}
@@ -29,7 +29,7 @@ public class Selection {
     public void add(PickableEntity entity) {
         internalSelection.remove(entity);
         internalSelection.add(entity);
-        if (isMain) entity.selected = true;
+        if (isMain) setSelected(entity, true);
 
         if (entity.getType() == PickableEntity.MODULE) {
             ((BaseModule)entity).error = false;
@@ -40,7 +40,7 @@ public class Selection {
         for (PickableEntity e : entities) {
             internalSelection.remove(e);
             internalSelection.add(e);
-            if (isMain) e.selected = true;
+            if (isMain) setSelected(e, true);
         }
     }
 
@@ -66,27 +66,38 @@ public class Selection {
     public void toggle(PickableEntity e) {
         if (internalSelection.contains(e)) {
             internalSelection.remove(e);
-            e.selected = false;
+            setSelected(e, false);
         }
         else {
             internalSelection.add(e);
-            e.selected = true;
+            setSelected(e, true);
         }
     }
 
     public void remove(BaseModule m) {
         internalSelection.remove(m);
-        m.selected = false;
+        setSelected(m, false);
     }
 
     public void clear() {
         for (PickableEntity e : internalSelection) {
-            e.selected = false;
+            setSelected(e, false);
         }
 
         internalSelection.clear();
     }
 
+    /**
+     * Sets an entity's selected flag. Selected control points are drawn on the view's static layer, which is redrawn
+     * where they are.
+     */
+    private void setSelected(PickableEntity e, boolean selected) {
+        e.selected = selected;
+        if (e.getType() == PickableEntity.CTRLPT) {
+            Main.sim.spatial.markChanged(e);
+        }
+    }
+
     public void deleteAll() {
         Main.opStack.beginCompoundOp();
         ArrayList<PickableEntity> forDeletion = new ArrayList<>(internalSelection);
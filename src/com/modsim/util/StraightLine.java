@@ -37,17 +37,11 @@ public class StraightLine {
 	 * @return Cartesian coordinates of point
 	 */
 	public Vec2 calcPoint(double t) {
-        Vec2 a = new Vec2();
-        t = t * (p1.dist(p2));
+        Vec2 a = new Vec2(p2);
+        a.sub(p1);
+        a.mul(t);
+        a.add(p1);
 
-        if (p2.x - p1.x == 0) {
-            a.set(p1.x, p1.y + (p2.y - p1.y < 0 ? -t : t));
-        }
-        else {
-            double m = (p2.y - p1.y) / (p2.x - p1.x);
-            a.set(p1.x + (p2.x - p1.x < 0 ? -t : t), p1.y + (m * (p2.x - p1.x < 0 ? -t : t)));
-        }
-        
 		return a;
 	}
 
@@ -1,6 +1,7 @@
 package com.modsim.util;
 
 import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,49 +17,6 @@ public class StraightPath extends Path {
 
 	public List<StraightLine> lines = new ArrayList<>();
 
-	public PointInfo approxClosestPoint(Vec2 searchPt, int iterations) {
-		Vec2 bestPoint = new Vec2();
-		double bestDist = Double.POSITIVE_INFINITY;
-        double bestT = 0;
-        int bestcurveIndex = -1;
-
-		for (int cInd = 0; cInd < lines.size(); cInd++) {
-            StraightLine line = lines.get(cInd);
-			double topT = 1.0;
-			double bottomT = 0.0;
-
-			for (int i = 0; i < iterations; i++) {
-				double t1 = bottomT + (topT - bottomT) / 4;
-				double t2 = topT - (topT - bottomT) / 4;
-				Vec2 p1 = line.calcPoint(t1);
-				Vec2 p2 = line.calcPoint(t2);
-
-				if (p1.dist(searchPt) < p2.dist(searchPt)) {
-					topT = (topT + bottomT) / 2;
-				}
-				else {
-					bottomT = (topT + bottomT) / 2;
-				}
-			}
-
-			Vec2 linePoint = line.calcPoint((topT + bottomT) / 2);
-			double lineDist = linePoint.dist(searchPt);
-			if (lineDist < bestDist) {
-				bestDist = lineDist;
-				bestPoint = linePoint;
-                bestcurveIndex = cInd;
-                bestT = (topT + bottomT) / 2;
-			}
-		}
-
-        PointInfo pInfo = new PointInfo();
-        pInfo.pt = bestPoint;
-        pInfo.dist = bestDist;
-        pInfo.curveIndex = bestcurveIndex;
-        pInfo.t = bestT;
-		return pInfo;
-	}
-
     public CtrlPt closestCtrlPt(Vec2 searchPt) {
         double bestDist = Double.POSITIVE_INFINITY;
         CtrlPt bestPt = null;
@@ -115,6 +73,7 @@ public class StraightPath extends Path {
 		StraightLine first = lines.get(0);
 		first.p1 = new Vec2(end);
 		first.update();
+		geometryChanged();
 	}
 	public void setStart(Vec2 end, Vec2 c) {
         setStart(end);
@@ -193,6 +152,15 @@ public class StraightPath extends Path {
 			last.update();
 			if (last2 != null) last2.update();
 		}
+
+		geometryChanged();
+		Main.sim.spatial.pathChanged(this);
+	}
+
+	protected void flatten(FlatPath f) {
+		for (StraightLine l : lines) {
+			f.addLine(l.line);
+		}
 	}
 
 	/**
@@ -269,6 +237,28 @@ public class StraightPath extends Path {
 		calcCurves();
 	}
 
+	/**
+	 * Gets the world-space area the path covers
+	 */
+	public Rectangle2D getBounds() {
+		Rectangle2D bounds = null;
+		for (StraightLine l : lines) {
+			if (bounds == null) bounds = l.line.getBounds2D();
+			else bounds.add(l.line.getBounds2D());
+		}
+		return bounds == null ? new Rectangle2D.Double() : bounds;
+	}
+
+	/**
+	 * Draw the lines, without control points
+	 * @param g Graphics context to draw with
+	 */
+	public void drawSimplified(Graphics2D g) {
+		for (StraightLine l : lines) {
+			l.draw(g);
+		}
+	}
+
 	/**
 	 * Draw the full path
 	 * @param g Graphics context to draw with
@@ -1,8 +1,32 @@
 package com.modsim.util;
 
 import java.awt.geom.AffineTransform;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 import com.modsim.modules.BaseModule;
+import com.modsim.modules.NRAM;
 import com.modsim.modules.parts.*;
 import com.modsim.modules.ports.Input;
 import com.modsim.modules.ports.Output;
@@ -60,7 +84,46 @@ public class Tests {
             System.out.println();
         }
 
+        // File output
+        System.out.print("Testing XML output against the DOM serializer: ");
+        try {
+            testXMLOutput();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+        System.out.println();
 
+        System.out.print("Testing hex loading: ");
+        try {
+            testHexReader();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+        System.out.println();
+
+        System.out.print("Testing memory image import: ");
+        try {
+            testImageImport();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+        System.out.println();
+
+        System.out.print("Testing binary format round trip: ");
+        try {
+            testBinaryRoundTrip();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            result = false;
+        }
+        System.out.println();
 
         if (!result) {
             System.err.println("Tests failed");
@@ -70,6 +133,299 @@ public class Tests {
         }
     }
 
+    /**
+     * Checks that the streamed XML writer produces the same document as the DOM serializer it replaced, including
+     * for attribute values with whitespace and markup characters in
+     */
+    private static void testXMLOutput() throws Exception {
+        DesignData data = sampleDesign();
+
+        StringWriter streamed = new StringWriter();
+        XMLWriter.writeDocument(streamed, data);
+
+        // The same design, built and serialized as a DOM
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element root = doc.createElement("ModuleSim");
+        doc.appendChild(root);
+
+        Element view = doc.createElement("view");
+        view.setAttribute("camX", "" + data.camX);
+        view.setAttribute("camY", "" + data.camY);
+        view.setAttribute("zoom", "" + data.zoom);
+        root.appendChild(view);
+
+        Element mods = doc.createElement("ModuleSim");
+        root.appendChild(mods);
+        for (DesignData.ModuleRecord rec : data.modules) {
+            Element modElem = doc.createElement("module");
+            modElem.setAttribute("ID", "" + rec.ID);
+            modElem.setAttribute("type", rec.type.name());
+
+            Element dim = doc.createElement("dim");
+            dim.setAttribute("x", "" + rec.x);
+            dim.setAttribute("y", "" + rec.y);
+            dim.setAttribute("orient", "" + rec.orientation);
+            modElem.appendChild(dim);
+
+            modElem.appendChild(portList(doc, "inputs", "input", rec.inputIDs));
+            modElem.appendChild(portList(doc, "outputs", "output", rec.outputIDs));
+
+            if (rec.data != null) {
+                Element dataElem = doc.createElement("data");
+                for (Map.Entry<String, String> entry : rec.data.entrySet()) {
+                    dataElem.setAttribute(entry.getKey(), entry.getValue());
+                }
+                modElem.appendChild(dataElem);
+            }
+            mods.appendChild(modElem);
+        }
+
+        Element links = doc.createElement("links");
+        root.appendChild(links);
+        for (DesignData.LinkRecord rec : data.links) {
+            Element lElem = doc.createElement("link");
+            lElem.setAttribute("src", "" + rec.src);
+            lElem.setAttribute("targ", "" + rec.targ);
+            lElem.setAttribute("type", rec.pathType);
+            for (int i = 0; i < rec.ctrlPts.length; i += 2) {
+                Element point = doc.createElement("ctrlPt");
+                point.setAttribute("x", "" + rec.ctrlPts[i]);
+                point.setAttribute("y", "" + rec.ctrlPts[i + 1]);
+                lElem.appendChild(point);
+            }
+            links.appendChild(lElem);
+        }
+
+        Transformer t = TransformerFactory.newInstance().newTransformer();
+        t.setOutputProperty(OutputKeys.INDENT, "yes");
+        t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        StringWriter serialized = new StringWriter();
+        t.transform(new DOMSource(doc), new StreamResult(serialized));
+
+        testval(streamed.toString(), serialized.toString());
+    }
+
+    /**
+     * Checks that a design written in the binary format reads back the same, from a read-only file, and that
+     * writing to a memory loaded from it leaves the file unchanged
+     */
+    private static void testBinaryRoundTrip() throws Exception {
+        DesignData data = sampleDesign();
+
+        DesignData.ModuleRecord ram = new DesignData.ModuleRecord();
+        ram.type = BaseModule.AvailableModules.RAM;
+        ram.ID = 5;
+        ram.x = 100;
+        ram.orientation = 2;
+        ram.image = ByteBuffer.allocate(NRAM.IMAGE_SIZE);
+        for (int i = 0; i < NRAM.IMAGE_SIZE; i++) {
+            ram.image.put(i, (byte) (0xF0 | (i * 7 & 0xF)));
+        }
+        data.modules.add(ram);
+
+        File file = File.createTempFile("modsim-test", ".modsimb");
+        file.deleteOnExit();
+        try {
+            BinaryWriter.write(file, data);
+            byte[] written = Files.readAllBytes(file.toPath());
+            file.setWritable(false);
+            long modified = file.lastModified();
+
+            DesignData read = BinaryReader.read(file);
+            testval(read.camX, data.camX);
+            testval(read.camY, data.camY);
+            testval(read.zoom, data.zoom);
+
+            testval(read.modules.size(), data.modules.size());
+            for (int i = 0; i < data.modules.size(); i++) {
+                DesignData.ModuleRecord a = data.modules.get(i), b = read.modules.get(i);
+                testval(b.type, a.type);
+                testval(b.ID, a.ID);
+                testval(b.x, a.x);
+                testval(b.y, a.y);
+                testval(b.orientation, a.orientation);
+                testval(Arrays.toString(b.inputIDs), Arrays.toString(a.inputIDs));
+                testval(Arrays.toString(b.outputIDs), Arrays.toString(a.outputIDs));
+                testval(b.data, a.data == null ? new HashMap<String, String>() : a.data);
+                testval(b.image == null ? "none" : b.image, a.image == null ? "none" : a.image);
+            }
+
+            testval(read.links.size(), data.links.size());
+            for (int i = 0; i < data.links.size(); i++) {
+                DesignData.LinkRecord a = data.links.get(i), b = read.links.get(i);
+                testval(b.src, a.src);
+                testval(b.targ, a.targ);
+                testval(b.pathType, a.pathType);
+                testval(Arrays.toString(b.ctrlPts), Arrays.toString(a.ctrlPts));
+            }
+
+            // Writes to the loaded memory stay in memory, leaving the design file as it was
+            NRAM nram = (NRAM) BaseModule.AvailableModules.RAM.getSrcModule().createNew();
+            nram.adoptImage(read.modules.get(read.modules.size() - 1).image);
+            nram.setByte(0, 0x5A);
+            testval(nram.getByte(0), 0x5A);
+            testval(Arrays.equals(Files.readAllBytes(file.toPath()), written), true);
+            testval(file.lastModified(), modified);
+        }
+        finally {
+            file.setWritable(true);
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks the hex tokenizer, including entries split across reads and malformed entries
+     */
+    private static void testHexReader() throws Exception {
+        NRAM nram = newNRAM();
+        HexReader.loadString("3x1A\n2b\t 00", nram);
+        testval(nram.getByte(0), 0x1A);
+        testval(nram.getByte(2), 0x1A);
+        testval(nram.getByte(3), 0x2B);
+        testval(nram.getByte(4), 0x00);
+
+        // Long enough that entries straddle the reader's buffer
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            hex.append(i % 3 == 0 ? "c5 " : "7f\n");
+        }
+        nram = newNRAM();
+        HexReader.read(Channels.newChannel(new ByteArrayInputStream(
+                hex.toString().getBytes(StandardCharsets.ISO_8859_1))), nram);
+        testval(nram.getByte(0), 0xC5);
+        testval(nram.getByte(39998), 0x7F);
+        testval(nram.getByte(39999), 0xC5);
+
+        for (String bad : new String[] {"123", "1G", "x00", "a2x00", "0", "00000000000000000000"}) {
+            NRAM target = newNRAM();
+            testthrows(() -> HexReader.loadString(bad, target));
+        }
+    }
+
+    /**
+     * Checks the Intel HEX and raw binary importers, including checksums, loading at an offset and images running
+     * past the end of memory
+     */
+    private static void testImageImport() throws Exception {
+        // The example record from the Intel HEX specification, loaded 0x10 bytes further on
+        NRAM nram = newNRAM();
+        int ignored = IntelHexReader.read(new BufferedReader(new StringReader(
+                ":0300300002337A1E\n:00000001FF\n")), nram, 0x10);
+        testval(ignored, 0);
+        testval(nram.getByte(0x40), 0x02);
+        testval(nram.getByte(0x42), 0x7A);
+
+        NRAM target = newNRAM();
+        testthrows(() -> IntelHexReader.read(new BufferedReader(new StringReader(":0300300002337A1F\n")),
+                target, 0));
+
+        // A record running past the end of memory, and one wholly beyond it
+        nram = newNRAM();
+        ignored = IntelHexReader.read(new BufferedReader(new StringReader(
+                intelRecord(NRAM.MAX_ADDR - 1, 0, 1, 2, 3, 4) + "\n"
+                + intelRecord(0, 4, 0x00, 0x01) + "\n"
+                + intelRecord(0, 0, 5, 6) + "\n")), nram, 0);
+        testval(ignored, 4);
+        testval(nram.getByte(NRAM.MAX_ADDR - 1), 1);
+        testval(nram.getByte(NRAM.MAX_ADDR), 2);
+
+        // Raw images load at the given address, leaving memory around them untouched
+        File raw = File.createTempFile("modsim-test", ".bin");
+        raw.deleteOnExit();
+        try {
+            Files.write(raw.toPath(), new byte[] {0x11, 0x22, 0x33});
+            nram = newNRAM();
+            int before = nram.getByte(0xFF);
+            testval(RawReader.read(raw, nram, 0x100), 0);
+            testval(nram.getByte(0xFF), before);
+            testval(nram.getByte(0x100), 0x11);
+            testval(nram.getByte(0x102), 0x33);
+
+            testval(RawReader.read(raw, nram, NRAM.MAX_ADDR - 1), 1);
+            testval(nram.getByte(NRAM.MAX_ADDR), 0x22);
+
+            NRAM outside = newNRAM();
+            testthrows(() -> RawReader.read(raw, outside, NRAM.MAX_ADDR + 1));
+        }
+        finally {
+            raw.delete();
+        }
+    }
+
+    /**
+     * @return An Intel HEX record with a correct checksum
+     */
+    private static String intelRecord(int address, int type, int... data) {
+        int[] rec = new int[data.length + 4];
+        rec[0] = data.length;
+        rec[1] = (address >> 8) & 0xFF;
+        rec[2] = address & 0xFF;
+        rec[3] = type;
+        System.arraycopy(data, 0, rec, 4, data.length);
+
+        StringBuilder line = new StringBuilder(":");
+        int sum = 0;
+        for (int b : rec) {
+            line.append(String.format("%02X", b));
+            sum += b;
+        }
+        return line.append(String.format("%02X", -sum & 0xFF)).toString();
+    }
+
+    private static NRAM newNRAM() {
+        return (NRAM) BaseModule.AvailableModules.RAM.getSrcModule().createNew();
+    }
+
+    /**
+     * @return A small design, with attribute values holding whitespace and markup characters
+     */
+    private static DesignData sampleDesign() {
+        DesignData data = new DesignData();
+        data.camX = 12.5;
+        data.camY = -3;
+        data.zoom = 4;
+
+        DesignData.ModuleRecord m = new DesignData.ModuleRecord();
+        m.type = BaseModule.AvailableModules.values()[0];
+        m.ID = 1;
+        m.x = 10;
+        m.y = -20.5;
+        m.inputIDs = new int[] {2, 3};
+        m.data.put("label", "a\tb\nc\r\nd \"e\" 'f' <g> & h \u00e9");
+        m.data.put("store", "x>y]]>");
+        data.modules.add(m);
+
+        DesignData.ModuleRecord empty = new DesignData.ModuleRecord();
+        empty.type = m.type;
+        empty.ID = 4;
+        empty.data = null;
+        data.modules.add(empty);
+
+        DesignData.LinkRecord l = new DesignData.LinkRecord();
+        l.src = 2;
+        l.targ = 3;
+        l.pathType = XMLReader.BEZIER_TAG;
+        l.ctrlPts = new double[] {1, 2, 3, 4};
+        data.links.add(l);
+
+        DesignData.LinkRecord straight = new DesignData.LinkRecord();
+        straight.src = 3;
+        straight.targ = 2;
+        straight.pathType = XMLReader.STRAIGHT_TAG;
+        data.links.add(straight);
+        return data;
+    }
+
+    private static Element portList(Document doc, String listName, String itemName, int[] portIDs) {
+        Element list = doc.createElement(listName);
+        for (int id : portIDs) {
+            Element e = doc.createElement(itemName);
+            e.setAttribute("ID", "" + id);
+            list.appendChild(e);
+        }
+        return list;
+    }
+
     private static boolean testval(Object o, Object v) {
         if (!o.equals(v)) {
             System.err.print("BAD VALUE "+o.toString()+" ");
@@ -82,6 +438,31 @@ public class Tests {
         }
     }
 
+    /**
+     * Expects the check to be rejected with an IOException
+     */
+    private static boolean testthrows(Check c) {
+        try {
+            c.run();
+        }
+        catch (IOException e) {
+            System.out.print("OK ");
+            return true;
+        }
+        catch (Exception e) {
+            System.err.print("BAD EXCEPTION " + e + " ");
+            result = false;
+            return false;
+        }
+        System.err.print("NOT REJECTED ");
+        result = false;
+        return false;
+    }
+
+    private interface Check {
+        void run() throws Exception;
+    }
+
     private static boolean testnull(Object o) {
         if (o == null) {
             System.err.print("NULL ");
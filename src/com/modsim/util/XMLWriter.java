@@ -1,216 +1,290 @@
 package com.modsim.util;
 
-import com.modsim.gui.view.View;
-
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.modsim.modules.BaseModule;
 import com.modsim.modules.Link;
-import com.modsim.modules.ports.BidirPort;
-import com.modsim.modules.parts.Port;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import com.modsim.util.DesignData.LinkRecord;
+import com.modsim.util.DesignData.ModuleRecord;
 
-import com.modsim.Main;
 
 public class XMLWriter {
 
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    private static final String INDENT = "  ";
+
     /**
-     * Generates unique IDs for entities in the simulation
+     * Writes an XML format file
      */
-    private static void genIDs() {
-        synchronized (Main.sim) {
-            int id = 0;
+    static void write(File xmlFile, DesignData data) throws XMLStreamException, IOException {
+        try (Writer out = new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(xmlFile)), StandardCharsets.UTF_8)) {
+            writeDocument(out, data);
+        }
+    }
 
-            for (BaseModule m : Main.sim.getModules()) {
-                m.ID = id++;
+    public static String writeString(List<BaseModule> modules, List<Link> links) {
+        try {
+            DesignData data = DesignData.capture(modules, links);
 
-                for (Port p : m.ports) {
-                    p.ID = id++;
-                }
-            }
+            StringWriter writer = new StringWriter();
+            writeDocument(writer, data);
+            return writer.toString();
+
+        } catch (Exception e) {
+            e.printStackTrace();
         }
+        return "";
     }
 
     /**
-     * Write an XML format file
-     *
-     * @param path
+     * Streams the XML document for the captured design to the writer. Elements are emitted as they are visited,
+     * so no document tree is held in memory.
      */
-    public static void writeFile(File xmlFile) {
-        try {
-            Document doc = constructXMLDocument(Main.sim.getModules(), Main.sim.getLinks());
+    static void writeDocument(Writer out, DesignData data) throws XMLStreamException, IOException {
+        // The declaration is written by hand to keep the standalone attribute the DOM serializer used to emit
+        out.write(XML_DECLARATION);
 
-            // Saving operation
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer t = tf.newTransformer();
-            t.setOutputProperty(OutputKeys.INDENT, "yes");
-            t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            DOMSource src = new DOMSource(doc);
-            StreamResult r = new StreamResult(xmlFile);
+        XMLStreamWriter w = XMLOutputFactory.newInstance().createXMLStreamWriter(new WhitespaceEscapingWriter(out));
+        newLine(w, 0);
+        w.writeStartElement("ModuleSim");
 
-            t.transform(src, r);
-            System.out.println("Saved simulation to " + xmlFile.getAbsolutePath());
+        // Store the view information
+        newLine(w, 1);
+        w.writeEmptyElement("view");
+        w.writeAttribute("camX", "" + data.camX);
+        w.writeAttribute("camY", "" + data.camY);
+        w.writeAttribute("zoom", "" + data.zoom);
+
+        // Store the modules
+        newLine(w, 1);
+        w.writeStartElement("ModuleSim");
+
+        for (ModuleRecord m : data.modules) {
+            writeModule(w, m);
+        }
 
-            Main.sim.filePath = xmlFile.getPath();
-            Main.ui.updateTitle();
+        newLine(w, 1);
+        w.writeEndElement();
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        // Store the links
+        newLine(w, 1);
+        w.writeStartElement("links");
+
+        for (LinkRecord l : data.links) {
+            writeLink(w, l);
         }
-    }
 
-    public static String writeString(List<BaseModule> modules, List<Link> links) {
-        try {
-            Document doc = constructXMLDocument(modules, links);
+        newLine(w, 1);
+        w.writeEndElement();
 
-            // Saving operation
-            TransformerFactory tf = TransformerFactory.newInstance();
-            Transformer t = tf.newTransformer();
-            t.setOutputProperty(OutputKeys.INDENT, "yes");
-            t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            DOMSource src = new DOMSource(doc);
+        newLine(w, 0);
+        w.writeEndElement();
+        newLine(w, 0);
+        w.flush();
+        w.close();
+    }
 
-            StringWriter writer = new StringWriter();
-            t.transform(src, new StreamResult(writer));
-            return writer.getBuffer().toString().replaceAll("\r", "");
+    /**
+     * Writes a single module element. Attributes are written in name order, matching the older DOM-based output.
+     */
+    private static void writeModule(XMLStreamWriter w, ModuleRecord m) throws XMLStreamException {
+        newLine(w, 2);
+        w.writeStartElement("module");
+        w.writeAttribute("ID", "" + m.ID);
+        w.writeAttribute("type", m.type.name());
+
+        // Dimensions
+        newLine(w, 3);
+        w.writeEmptyElement("dim");
+        w.writeAttribute("orient", "" + m.orientation);
+        w.writeAttribute("x", "" + m.x);
+        w.writeAttribute("y", "" + m.y);
+
+        // Inputs (i.e. ports on the input side), then outputs (i.e. ports on the output side)
+        writePortList(w, "inputs", "input", m.inputIDs);
+        writePortList(w, "outputs", "output", m.outputIDs);
+
+        // Data - stored only if the module's dataOut override indicates a modification has been made
+        if (m.data != null) {
+            TreeMap<String, String> dataMap = new TreeMap<>(m.data);
+            if (m.image != null) {
+                dataMap.put("memory_image", MemoryImage.encode(m.image));
+            }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            newLine(w, 3);
+            w.writeEmptyElement("data");
+            for (Map.Entry<String, String> entry : dataMap.entrySet()) {
+                w.writeAttribute(entry.getKey(), entry.getValue());
+            }
         }
-        return "";
+
+        newLine(w, 2);
+        w.writeEndElement();
     }
 
     /**
-     * Construct an XML document for the current file.
-     * 
-     * @return The XML document.
+     * Writes a list of port ID elements, collapsing to an empty element if there are no ports
      */
-    private static Document constructXMLDocument( List<BaseModule> modules
-                                                , List<Link> links)
-        throws ParserConfigurationException {
-        DocumentBuilderFactory dbF = DocumentBuilderFactory.newInstance();
-        DocumentBuilder db = dbF.newDocumentBuilder();
+    private static void writePortList(XMLStreamWriter w, String listName, String itemName, int[] portIDs)
+        throws XMLStreamException {
+        newLine(w, 3);
+        if (portIDs.length == 0) {
+            w.writeEmptyElement(listName);
+            return;
+        }
 
-        Document doc = db.newDocument();
+        w.writeStartElement(listName);
+        for (int id : portIDs) {
+            newLine(w, 4);
+            w.writeEmptyElement(itemName);
+            w.writeAttribute("ID", "" + id);
+        }
+        newLine(w, 3);
+        w.writeEndElement();
+    }
 
-        // Build the document... add elements, attributes to represent the entities
-        Element rootElem = doc.createElement("ModuleSim");
-        doc.appendChild(rootElem);
+    /**
+     * Writes a single link element with its control points
+     */
+    private static void writeLink(XMLStreamWriter w, LinkRecord l) throws XMLStreamException {
+        newLine(w, 2);
+        if (l.ctrlPts.length == 0) {
+            w.writeEmptyElement("link");
+        }
+        else {
+            w.writeStartElement("link");
+        }
+        w.writeAttribute("src", "" + l.src);
+        w.writeAttribute("targ", "" + l.targ);
+        w.writeAttribute("type", l.pathType);
 
-        // Store the view information
-        Element view = doc.createElement("view");
-        View v = Main.ui.view;
-        view.setAttribute("camX", "" + v.camX);
-        view.setAttribute("camY", "" + v.camY);
-        view.setAttribute("zoom", "" + v.zoomI);
-        rootElem.appendChild(view);
-
-        synchronized (Main.sim) {
-            // Generate IDs for storage
-            genIDs();
-
-            // Store the modules
-            Element mods = doc.createElement("ModuleSim");
-            rootElem.appendChild(mods);
-
-            for (BaseModule m : modules) {
-                Element modElem = doc.createElement("module");
-                modElem.setAttribute("ID", "" + m.getID());
-                modElem.setAttribute("type", m.getModType().name());
-
-                // Dimensions
-                Element dim = doc.createElement("dim");
-                dim.setAttribute("x", "" + m.pos.x);
-                dim.setAttribute("y", "" + m.pos.y);
-                dim.setAttribute("orient", "" + m.orientation);
-                modElem.appendChild(dim);
-
-                // HAX: See XMLReader for an explanation of what's going on here
-                ArrayList<Port> moduleInputs = new ArrayList<>();
-                moduleInputs.addAll(m.inputs);
-                ArrayList<Port> moduleOutputs = new ArrayList<>();
-                moduleOutputs.addAll(m.outputs);
-
-                for (BidirPort p : m.bidirs) {
-                    if (p.side == 1) {
-                        moduleInputs.add(p);
-                    }
-                    else {
-                        moduleOutputs.add(p);
-                    }
-                }
+        if (l.ctrlPts.length == 0) {
+            return;
+        }
 
-                // Inputs (i.e. ports on the input side)
-                Element inputs = doc.createElement("inputs");
+        // Curve points
+        for (int i = 0; i < l.ctrlPts.length; i += 2) {
+            newLine(w, 3);
+            w.writeEmptyElement("ctrlPt");
+            w.writeAttribute("x", "" + l.ctrlPts[i]);
+            w.writeAttribute("y", "" + l.ctrlPts[i + 1]);
+        }
 
-                for (Port inputEdgePort : moduleInputs) {
-                    Element e = doc.createElement("input");
-                    e.setAttribute("ID", "" + inputEdgePort.getID());
-                    inputs.appendChild(e);
-                }
+        newLine(w, 2);
+        w.writeEndElement();
+    }
+
+    /**
+     * Starts a new, indented line
+     * @param depth Nesting depth of the next element
+     */
+    private static void newLine(XMLStreamWriter w, int depth) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append(INDENT);
+        }
+        w.writeCharacters(sb.toString());
+    }
 
-                modElem.appendChild(inputs);
+    /**
+     * Writes tabs, newlines and carriage returns in attribute values (e.g. hex memory stores, labels) as character
+     * references, as the DOM serializer did. A reader would otherwise normalise them to spaces. Attribute values are
+     * found by tracking tags and quotes, which the stream writer always escapes within values.
+     */
+    private static final class WhitespaceEscapingWriter extends FilterWriter {
 
-                // Outputs (i.e. ports on the output side)
-                Element outputs = doc.createElement("outputs");
+        // Buffer strings are copied through a slice at a time
+        private final char[] buf = new char[1024];
 
-                for (Port outputEdgePort : moduleOutputs) {
-                    Element e = doc.createElement("output");
-                    e.setAttribute("ID", "" + outputEdgePort.getID());
-                    outputs.appendChild(e);
-                }
+        private boolean inTag = false;
+        private boolean inValue = false;
 
-                modElem.appendChild(outputs);
+        WhitespaceEscapingWriter(Writer out) {
+            super(out);
+        }
 
-                // Data - stored only if the module's dataOut override indicates a modification has been made
-                Element data = doc.createElement("data");
-                HashMap<String, String> dataMap = m.dataOut();
-                if (dataMap != null) {
-                    for (String key : dataMap.keySet()) {
-                        data.setAttribute(key, dataMap.get(key));
-                    }
-                    modElem.appendChild(data);
+        /**
+         * Tracks the position in the markup, and gets the character reference needed for a character
+         * @return The reference, or null if the character is written as it is
+         */
+        private String escape(char c) {
+            if (inValue) {
+                switch (c) {
+                    case '"':
+                        inValue = false;
+                        break;
+                    case '\t':
+                        return "&#9;";
+                    case '\n':
+                        return "&#10;";
+                    case '\r':
+                        return "&#13;";
+                }
+            }
+            else if (inTag) {
+                if (c == '"') {
+                    inValue = true;
                 }
+                else if (c == '>') {
+                    inTag = false;
+                }
+            }
+            else if (c == '<') {
+                inTag = true;
+            }
+            return null;
+        }
 
-                mods.appendChild(modElem);
+        @Override
+        public void write(int c) throws IOException {
+            String ref = escape((char) c);
+            if (ref != null) {
+                out.write(ref);
             }
+            else {
+                out.write(c);
+            }
+        }
 
-            // Store the links
-            Element linksElem = doc.createElement("links");
-            rootElem.appendChild(linksElem);
-
-            for (Link l : links) {
-                Element lElem = doc.createElement("link");
-                lElem.setAttribute("src", "" + l.src.ID);
-                lElem.setAttribute("targ", "" + l.targ.ID);
-                lElem.setAttribute("type", l.path.XMLTagName());
-
-                // Curve points
-                for (CtrlPt c : l.path.ctrlPts) {
-                    Element point = doc.createElement("ctrlPt");
-                    point.setAttribute("x", "" + c.pos.x);
-                    point.setAttribute("y", "" + c.pos.y);
-                    lElem.appendChild(point);
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int start = off;
+            for (int i = off; i < off + len; i++) {
+                String ref = escape(cbuf[i]);
+                if (ref != null) {
+                    out.write(cbuf, start, i - start);
+                    out.write(ref);
+                    start = i + 1;
                 }
+            }
+            out.write(cbuf, start, off + len - start);
+        }
 
-                linksElem.appendChild(lElem);
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, buf.length);
+                str.getChars(off, off + n, buf, 0);
+                write(buf, 0, n);
+                off += n;
+                len -= n;
             }
         }
-        return doc;
     }
 }